@@ -32,6 +32,7 @@ import lombok.extern.slf4j.Slf4j;
 import java.io.*;
 import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -44,6 +45,11 @@ import java.util.jar.JarFile;
 public class Kmeel extends Application {
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("cli")) {
+            // Never starts the FX toolkit
+            KmeelCLI.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         log.info("Starting Kmeel...");
 
         Application.launch(args);
@@ -59,7 +65,7 @@ public class Kmeel extends Application {
         new TabStage();
     }
 
-    private ArrayList<String> getFilesInJarDirectory() {
+    private static ArrayList<String> getFilesInJarDirectory() {
         ArrayList<String> files = new ArrayList<>();
 
         try {
@@ -73,7 +79,7 @@ public class Kmeel extends Application {
         }
     }
 
-    private void checkNotInSourceCode() {
+    static void checkNotInSourceCode() {
         ArrayList<String> filesInJarDirectory = getFilesInJarDirectory();
 
         if (filesInJarDirectory.contains("pom.xml") && filesInJarDirectory.contains("KmeelAPI")) {
@@ -99,14 +105,14 @@ public class Kmeel extends Application {
         }
     }
 
-    private void createDirectories() {
+    static void createDirectories() {
         new File(OSUtils.getApplicationPath()).mkdir();
         new File(OSUtils.getCasesPath()).mkdir();
         new File(OSUtils.getPluginPath()).mkdir();
         new File(OSUtils.getTempPath()).mkdir();
     }
 
-    private void copyPlugins() {
+    static void copyPlugins() {
         if (new File(OSUtils.getPluginPath()).list().length == 0) {
             if (hasDefaultPlugins()) {
                 copyDefaultPlugins();
@@ -116,7 +122,7 @@ public class Kmeel extends Application {
         }
     }
 
-    private boolean hasDefaultPlugins() {
+    private static boolean hasDefaultPlugins() {
         try {
             JarFile jarFile = new JarFile(OSUtils.getJarFile().getPath());
 
@@ -133,7 +139,7 @@ public class Kmeel extends Application {
         return false;
     }
 
-    private void copyDefaultPlugins() {
+    private static void copyDefaultPlugins() {
         try {
             log.info("Attempting to get default plugins...");
 
@@ -156,7 +162,7 @@ public class Kmeel extends Application {
         }
     }
 
-    private void copyMavenPlugins() {
+    private static void copyMavenPlugins() {
         try {
             log.info("No default plugins found, attempting to get from maven...");
 
@@ -0,0 +1,350 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel;
+
+import com.github.kmeel.api.KmeelAPI;
+import com.github.kmeel.api.model.Cases;
+import com.github.kmeel.api.model.MessageRows;
+import com.github.kmeel.api.model.Plugins;
+import com.github.kmeel.api.model.objects.Case;
+import com.github.kmeel.api.model.objects.ID;
+import com.github.kmeel.api.model.objects.MessageRow;
+import com.github.kmeel.model.FileParser;
+import com.github.kmeel.model.SourceDiscovery;
+import com.github.kmeel.model.objects.SourceManifest;
+import com.github.kmeel.view.ConsoleLoadingView;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author Marten4n6
+ *         Command-line mode, ingests and searches cases without starting the FX toolkit.
+ *         Started with "java -jar Kmeel.jar cli ...".
+ */
+@Slf4j
+public class KmeelCLI {
+
+    private static final String USAGE = String.join("\n",
+            "Usage: java -jar Kmeel.jar cli <command>",
+            "",
+            "  ingest <case> [options] [source...]     Creates the case (or opens it) and parses its sources",
+            "      --description <text>",
+            "      --investigator <name>",
+            "      --subfolders                        Also parses the sub-folders of a directory source",
+            "      --threads <amount>                  Sets the IngestThreads setting of the case",
+            "  search <case> <query> [--limit <hits>]  Prints the matching messages of an ingested case"
+    );
+
+    private List<String> arguments = new ArrayList<>();
+    private Map<String, String> options = new HashMap<>();
+    private Set<String> flags = new HashSet<>();
+
+    private KmeelCLI(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--subfolders")) {
+                flags.add(args[i]);
+            } else if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i], args[++i]);
+            } else {
+                arguments.add(args[i]);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("kmeel.headless", "true");
+
+        KmeelCLI cli = new KmeelCLI(args);
+        int exitCode;
+
+        if (cli.arguments.size() < 2) {
+            System.out.println(USAGE);
+            System.exit(1);
+        }
+
+        Kmeel.checkNotInSourceCode();
+        Kmeel.createDirectories();
+        Kmeel.copyPlugins();
+
+        switch (cli.arguments.get(0)) {
+            case "ingest":
+                exitCode = cli.ingest();
+                break;
+            case "search":
+                exitCode = cli.search();
+                break;
+            default:
+                System.out.println(USAGE);
+                exitCode = 1;
+                break;
+        }
+
+        // Plugins may still have idle threads
+        System.exit(exitCode);
+    }
+
+    private int ingest() {
+        String caseName = arguments.get(1);
+        List<String> sources = arguments.subList(2, arguments.size());
+        KmeelAPI kmeelAPI;
+        SourceManifest manifest = null;
+
+        if (Cases.getNames().contains(caseName)) {
+            if (!sources.isEmpty()) System.out.println("The case already exists, using its sources.");
+
+            kmeelAPI = new KmeelAPI(Cases.get(caseName));
+        } else if (sources.isEmpty()) {
+            System.err.println("No sources specified.");
+            return 1;
+        } else {
+            for (String source : sources) {
+                if (!new File(source).exists()) {
+                    System.err.println("Failed to find source: " + source);
+                    return 1;
+                }
+            }
+            kmeelAPI = new KmeelAPI(null);
+
+            System.out.println("Discovering source files...");
+            manifest = SourceDiscovery.discover(kmeelAPI, sources, flags.contains("--subfolders"));
+
+            createCase(kmeelAPI, caseName, new ArrayList<>(sources), manifest);
+        }
+
+        if (options.containsKey("--threads")) {
+            kmeelAPI.settings().set("IngestThreads", options.get("--threads"));
+        }
+        return parse(kmeelAPI, manifest) ? 0 : 1;
+    }
+
+    private int search() {
+        if (arguments.size() < 3) {
+            System.out.println(USAGE);
+            return 1;
+        }
+        String caseName = arguments.get(1);
+        String query = String.join(" ", arguments.subList(2, arguments.size()));
+
+        if (!Cases.getNames().contains(caseName)) {
+            System.err.println("There is no case called \"" + caseName + "\".");
+            return 1;
+        }
+        KmeelAPI kmeelAPI = new KmeelAPI(Cases.get(caseName));
+
+        // Rows are built from the committed index, so the sources don't have to be available
+        openCase(kmeelAPI);
+
+        int limit;
+
+        try {
+            limit = Integer.parseInt(options.getOrDefault("--limit", "100"));
+        } catch (NumberFormatException ex) {
+            System.err.println("Invalid limit: " + options.get("--limit"));
+            return 1;
+        }
+
+        kmeelAPI.searcher().setErrorListener(ex -> System.err.println("Failed to search: " + ex.getMessage()));
+        IndexSearcher indexSearcher = kmeelAPI.searcher().acquire();
+
+        if (indexSearcher == null) {
+            System.err.println("The case \"" + caseName + "\" hasn't been indexed yet.");
+            return 1;
+        }
+
+        try {
+            return printHits(kmeelAPI, indexSearcher, query, limit);
+        } finally {
+            kmeelAPI.searcher().release(indexSearcher);
+        }
+    }
+
+    /**
+     * @return The exit code, the hits are printed as ID, received, from and subject.
+     */
+    private static int printHits(KmeelAPI kmeelAPI, IndexSearcher indexSearcher, String query, int limit) {
+        TopDocs topDocs = kmeelAPI.searcher().search(indexSearcher, query, limit);
+
+        if (topDocs == null) return 1;
+
+        System.out.println(topDocs.totalHits + " hits:");
+        MessageRows messageRows = new MessageRows(kmeelAPI);
+
+        for (ScoreDoc hit : topDocs.scoreDocs) {
+            try {
+                Document document = indexSearcher.doc(hit.doc);
+                ID id = new ID(document.get("ID"));
+                MessageRow row = messageRows.getRow(document);
+
+                if (row != null) {
+                    System.out.println(id.getId() + "\t" + row.getReceived().get() + "\t" + row.getFrom() + "\t" + row.getSubject());
+                } else {
+                    System.out.println(id.getId());
+                }
+            } catch (IOException ex) {
+                log.error(ex.getMessage(), ex);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Creates and stores the case of the discovered sources.
+     */
+    private void createCase(KmeelAPI kmeelAPI, String caseName, List<String> sources, SourceManifest manifest) {
+        boolean hasSubFolders = flags.contains("--subfolders");
+        long totalSize = manifest.getTotalSize();
+
+        Case caseObject = new Case(
+                caseName,
+                options.getOrDefault("--description", ""),
+                options.getOrDefault("--investigator", System.getProperty("user.name")),
+                humanReadableByteCount(totalSize),
+                sources,
+                new ArrayList<>(Plugins.getPluginsDisabledByDefault())
+        );
+        kmeelAPI.setCase(caseObject);
+
+        if (new File(sources.get(0)).isDirectory()) {
+            caseObject.setHasSubFolders(hasSubFolders);
+        }
+
+        Cases.storeCaseObject(caseObject);
+
+        // Default settings
+        kmeelAPI.settings().set("SearchLimit", "0");
+        kmeelAPI.settings().set("DateFormat", "EEE, d MMM yyyy HH:mm:ss");
+        kmeelAPI.settings().set("SourceHashing", "false");
+
+        System.out.println("Case \"" + caseName + "\" created.");
+    }
+
+    /**
+     * Makes the case the current case and unloads its disabled plugins.
+     */
+    private void openCase(KmeelAPI kmeelAPI) {
+        Case caseObject = kmeelAPI.getCaseObject();
+
+        Cases.setCurrentCase(caseObject);
+
+        caseObject.getDisabledPlugins().forEach(pluginName -> {
+            kmeelAPI.plugins().getPluginManager().unloadPlugin(pluginName);
+        });
+    }
+
+    /**
+     * Runs all parsers on the sources of the case, blocks until they are finished.
+     * Interrupting (Ctrl+C) cancels the ingest and commits what was indexed so far.
+     *
+     * @param manifest The files discovered while creating the case, null to discover them again.
+     * @return False if a source doesn't exist or the ingest was cancelled.
+     */
+    private boolean parse(KmeelAPI kmeelAPI, SourceManifest manifest) {
+        Case caseObject = kmeelAPI.getCaseObject();
+
+        for (String source : caseObject.getSources()) {
+            if (!new File(source).exists()) {
+                System.err.println("Failed to find source: " + source);
+                return false;
+            }
+        }
+
+        openCase(kmeelAPI);
+
+        ConsoleLoadingView loadingView = new ConsoleLoadingView(kmeelAPI);
+
+        kmeelAPI.plugins().getParsers().forEach(parser -> {
+            parser.setup(kmeelAPI, loadingView);
+        });
+        loadingView.show();
+
+        FileParser fileParser = new FileParser(kmeelAPI, loadingView);
+        CountDownLatch finishedLatch = new CountDownLatch(1);
+
+        fileParser.setFinishedListener((api, view) -> {
+            view.close();
+
+            if (api.fieldLimits().getTruncatedFields() > 0) {
+                System.out.println(api.fieldLimits().getTruncatedFields() + " fields were truncated to " + api.fieldLimits().getMaxFieldChars() + " characters.");
+            }
+            api.indexer().close();
+            finishedLatch.countDown();
+        });
+
+        AtomicBoolean isCancelled = new AtomicBoolean(false);
+
+        Thread cancelHook = new Thread(() -> {
+            isCancelled.set(true);
+            System.out.println("Cancelling, waiting for running files...");
+            fileParser.cancel();
+
+            try {
+                finishedLatch.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(cancelHook);
+
+        if (manifest != null) {
+            fileParser.parseSources(manifest);
+        } else if (new File(caseObject.getSources().get(0)).isDirectory()) {
+            fileParser.parseDirectory(new File(caseObject.getSources().get(0)), caseObject.getHasSubFolders());
+        } else {
+            fileParser.parseFiles(caseObject.getSources());
+        }
+
+        try {
+            finishedLatch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        // The JVM is already shutting down when cancelled, the hook can't be removed anymore
+        if (isCancelled.get()) return false;
+
+        try {
+            Runtime.getRuntime().removeShutdownHook(cancelHook);
+        } catch (IllegalStateException ex) {
+            // Cancelled right after the ingest finished
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return A human readable byte size
+     */
+    private static String humanReadableByteCount(long bytes) {
+        int unit = 1024;
+        if (bytes < unit) return bytes + " B";
+        int exp = (int) (Math.log(bytes) / Math.log(unit));
+        String pre = "KMGTPE".charAt(exp - 1) + "i";
+        return String.format("%.1f %sB", bytes / Math.pow(unit, exp), pre);
+    }
+}
@@ -21,10 +21,10 @@ package com.github.kmeel.controller;
 import com.github.kmeel.api.KmeelAPI;
 import com.github.kmeel.api.model.Cases;
 import com.github.kmeel.api.model.objects.Case;
-import com.github.kmeel.api.spi.Parser;
 import com.github.kmeel.api.utils.OSUtils;
 import com.github.kmeel.api.view.LoadingView;
 import com.github.kmeel.listeners.FinishedListener;
+import com.github.kmeel.listeners.StartedListener;
 import com.github.kmeel.model.FileParser;
 import com.github.kmeel.view.HomeTab;
 import com.github.kmeel.view.NewCaseStage;
@@ -58,6 +58,7 @@ public class HomeController {
     private HomeTab homeTab;
 
     private @Getter KmeelAPI kmeelAPI;
+    private StartedListener onStartedParsing;
     private FinishedListener onFinishedParsing;
 
     public HomeController(HomeTab homeTab) {
@@ -100,7 +101,7 @@ public class HomeController {
 
                     LoadingView loadingView = new LoadingView();
 
-                    kmeelAPI.plugins().getPluginManager().getExtensions(Parser.class).forEach(parser -> {
+                    kmeelAPI.plugins().getParsers().forEach(parser -> {
                         parser.setup(kmeelAPI, loadingView);
                     });
                     loadingView.show();
@@ -111,11 +112,10 @@ public class HomeController {
                         onFinishedParsing.finished(arg1, arg2);
                     });
 
-                    if (new File(kmeelAPI.getCaseObject().getSources().get(0)).isDirectory()) {
-                        fileParser.parseDirectory(new File(kmeelAPI.getCaseObject().getSources().get(0)), kmeelAPI.getCaseObject().getHasSubFolders());
-                    } else {
-                        fileParser.parseFiles(kmeelAPI.getCaseObject().getSources());
-                    }
+                    onStartedParsing.started(kmeelAPI, loadingView);
+
+                    // The sources were already walked while creating the case
+                    fileParser.parseSources(newCaseStage.getSourceManifest());
                 }
 
                 Platform.runLater(() -> homeTab.getTable().getItems().add(kmeelAPI.getCaseObject()));
@@ -170,7 +170,7 @@ public class HomeController {
 
                 LoadingView loadingView = new LoadingView();
 
-                kmeelAPI.plugins().getPluginManager().getExtensions(Parser.class).forEach(parser -> {
+                kmeelAPI.plugins().getParsers().forEach(parser -> {
                     parser.setup(kmeelAPI, loadingView);
                 });
                 loadingView.show();
@@ -181,6 +181,8 @@ public class HomeController {
                     onFinishedParsing.finished(arg1, arg2);
                 });
 
+                onStartedParsing.started(kmeelAPI, loadingView);
+
                 if (new File(caseObject.getSources().get(0)).isDirectory()) {
                     fileParser.parseDirectory(new File(caseObject.getSources().get(0)), caseObject.getHasSubFolders());
                 } else {
@@ -215,6 +217,10 @@ public class HomeController {
         });
     }
 
+    public void setOnStartedParsing(StartedListener listener) {
+        onStartedParsing = listener;
+    }
+
     public void setOnFinishedParsing(FinishedListener listener) {
         onFinishedParsing = listener;
     }
@@ -19,25 +19,18 @@
 package com.github.kmeel.model;
 
 import com.github.kmeel.api.KmeelAPI;
-import com.github.kmeel.api.spi.Parser;
+import com.github.kmeel.api.model.objects.SourceFingerprint;
+import com.github.kmeel.api.spi.BatchParser;
 import com.github.kmeel.api.view.LoadingView;
 import com.github.kmeel.listeners.FinishedListener;
-import javafx.concurrent.Task;
+import com.github.kmeel.model.objects.SourceFile;
+import com.github.kmeel.model.objects.SourceManifest;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FilenameUtils;
 
-import java.awt.event.ActionListener;
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Set;
-import java.util.concurrent.CountDownLatch;
+import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -52,6 +45,11 @@ public class FileParser {
 
     private ExecutorService executorService;
     private FinishedListener finishedListener;
+    private volatile IngestScheduler scheduler;
+    private volatile boolean isCancelled;
+
+    private AtomicInteger totalFiles = new AtomicInteger(0);
+    private AtomicInteger finishedFiles = new AtomicInteger(0);
 
     public FileParser(KmeelAPI kmeelAPI, LoadingView loadingView) {
         this.kmeelAPI = kmeelAPI;
@@ -61,149 +59,155 @@ public class FileParser {
     }
 
     public void parseFiles(List<String> filePaths) {
-        executorService.submit(() -> {
-            AtomicInteger runningParsersForFile = new AtomicInteger(0);
-
-            filePaths.forEach(filePath -> {
-                CountDownLatch countDownLatch = new CountDownLatch(1);
-                AtomicBoolean foundParser = new AtomicBoolean(false);
-
-                // Call all parsers on the file
-                kmeelAPI.plugins().getPluginManager().getExtensions(Parser.class).forEach(parser -> {
-                    if (parser.getAcceptedExtensions().contains(FilenameUtils.getExtension(filePath))) {
-                        foundParser.set(true);
-                        runningParsersForFile.incrementAndGet();
-
-                        ActionListener finishedListener = (event) -> {
-                            runningParsersForFile.decrementAndGet();
-
-                            if (runningParsersForFile.get() == 0) {
-                                countDownLatch.countDown();
-                            }
-                        };
-
-                        parser.parseFile(new File(filePath), filePaths.size(), finishedListener);
-                    }
-                });
-
-                if (foundParser.get()) {
-                    try {
-                        countDownLatch.await(); // Wait for parsers to finish before continuing
-                    } catch (InterruptedException ex) {
-                        log.error(ex.getMessage(), ex);
-                    }
-                }
-            });
-
-            finishedListener.finished(kmeelAPI, loadingView);
-        });
+        executorService.submit(() -> parseManifest(SourceDiscovery.discover(kmeelAPI, filePaths, false)));
+    }
+
+    /**
+     * Parses the files of a manifest which was already discovered (for example while creating the case).
+     */
+    public void parseSources(SourceManifest manifest) {
+        executorService.submit(() -> parseManifest(manifest));
     }
 
     public void parseDirectory(File directory, boolean parseSubFolders) {
         executorService.submit(() -> {
-            try {
-                HashMap<String, Integer> fileAmountFromExtension = getFileAmountFromExtension(kmeelAPI.messages().getSupportedFileExtensions(), directory, parseSubFolders);
-                AtomicInteger runningParsersForFile = new AtomicInteger(0);
-
-                Files.walkFileTree(Paths.get(directory.getPath()), new SimpleFileVisitor<Path>() {
-                    @Override
-                    public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
-                        String extension = FilenameUtils.getExtension(path.toString());
-
-                        if (kmeelAPI.messages().getSupportedFileExtensions().contains(extension)) {
-                            CountDownLatch countDownLatch = new CountDownLatch(1);
-                            AtomicBoolean foundParser = new AtomicBoolean(false);
-
-                            // Call all parsers on the file
-                            kmeelAPI.plugins().getPluginManager().getExtensions(Parser.class).forEach(parser -> {
-                                if (parser.getAcceptedExtensions().contains(extension)) {
-                                    foundParser.set(true);
-                                    runningParsersForFile.incrementAndGet();
-
-                                    ActionListener finishedListener = (event) -> {
-                                        runningParsersForFile.decrementAndGet();
-
-                                        if (runningParsersForFile.get() == 0) {
-                                            countDownLatch.countDown();
-                                        }
-                                    };
-
-                                    parser.parseFile(path.toFile(), fileAmountFromExtension.get(extension), finishedListener);
-                                }
-                            });
-
-                            if (foundParser.get()) {
-                                try {
-                                    countDownLatch.await(); // Wait for parsers to finish before continuing
-                                } catch (InterruptedException ex) {
-                                    log.error(ex.getMessage(), ex);
-                                }
-                            }
-                        }
-
-                        return FileVisitResult.CONTINUE;
-                    }
-
-                    @Override
-                    public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes basicFileAttributes) throws IOException {
-                        if (!parseSubFolders && !path.toString().equals(directory.getPath())) {
-                            return FileVisitResult.SKIP_SUBTREE;
-                        } else {
-                            return FileVisitResult.CONTINUE;
-                        }
-                    }
-
-                    @Override
-                    public FileVisitResult visitFileFailed(Path file, IOException ex) {
-                        log.error(file.toFile().getPath() + ": " + ex.getMessage());
-                        return FileVisitResult.CONTINUE;
-                    }
-                });
-            } catch (IOException ex) {
-                log.error(ex.getMessage(), ex);
+            parseManifest(SourceDiscovery.discover(kmeelAPI, Collections.singletonList(directory.getPath()), parseSubFolders));
+        });
+    }
+
+    /**
+     * Submits every file of the manifest to the parsers which accept it.
+     */
+    private void parseManifest(SourceManifest manifest) {
+        scheduler = createScheduler();
+        Map<String, BatchParser> parserFromName = new HashMap<>();
+
+        kmeelAPI.plugins().getParsers().forEach(parser -> {
+            parserFromName.put(parser.getName(), parser);
+        });
+
+        Map<List<String>, List<BatchParser>> parsersFromNames = new HashMap<>();
+
+        List<SourceFingerprint> fingerprints = new ArrayList<>();
+
+        for (SourceFile sourceFile : manifest.getFiles()) {
+            List<BatchParser> parsers = parsersFromNames.computeIfAbsent(sourceFile.getParsers(), names -> getParsers(parserFromName, names));
+
+            if (!parsers.isEmpty()) {
+                totalFiles.incrementAndGet();
+                fingerprints.add(new SourceFingerprint(sourceFile.getPath(), sourceFile.getSize(), sourceFile.getLastModified()));
+            }
+        }
+
+        // Removes the documents of changed and deleted sources, parsers skip indexing unchanged ones
+        kmeelAPI.sources().update(fingerprints);
+
+        boolean isBulkLoad = isBulkLoad();
+        if (isBulkLoad) {
+            kmeelAPI.indexer().startBulkLoad(getBulkRAMBufferMB(), kmeelAPI.settings().getInt("MergeThreads", getDefaultMergeThreads()));
+        }
+        kmeelAPI.indexer().startCheckpoints(getCheckpointMinutes());
+        long truncatedFields = kmeelAPI.fieldLimits().getTruncatedFields();
+
+        for (SourceFile sourceFile : manifest.getFiles()) {
+            List<BatchParser> parsers = parsersFromNames.get(sourceFile.getParsers());
+
+            if (!parsers.isEmpty()) {
+                scheduler.submit(new File(sourceFile.getPath()), parsers, parser -> manifest.getFileAmount(parser.getName()));
             }
+        }
+
+        scheduler.awaitCompletion(); // Wait for parsers to finish before continuing
+
+        kmeelAPI.indexer().stopCheckpoints();
+
+        if (isBulkLoad) {
+            // A cancelled ingest is continued later, merging now would be wasted work
+            kmeelAPI.indexer().finishBulkLoad(isCancelled ? 0 : kmeelAPI.settings().getInt("MergeSegments", 5));
+        } else {
+            kmeelAPI.indexer().checkpoint();
+        }
+
+        truncatedFields = kmeelAPI.fieldLimits().getTruncatedFields() - truncatedFields;
+        if (truncatedFields > 0) {
+            log.warn(truncatedFields + " fields were truncated to " + kmeelAPI.fieldLimits().getMaxFieldChars()
+                    + " characters (MaxFieldChars), their documents have a Truncated field.");
+        }
 
-            finishedListener.finished(kmeelAPI, loadingView);
+        finishedListener.finished(kmeelAPI, loadingView);
+    }
+
+    /**
+     * @return A scheduler which uses a worker for each available processor,
+     * unless the case overrides this with the "IngestThreads" setting.
+     */
+    private IngestScheduler createScheduler() {
+        int workerAmount = Math.max(1, kmeelAPI.settings().getInt("IngestThreads", Runtime.getRuntime().availableProcessors()));
+
+        return new IngestScheduler(workerAmount, (file) -> {
+            loadingView.updateProgress(finishedFiles.incrementAndGet(), totalFiles.get());
         });
     }
 
-    private HashMap<String, Integer> getFileAmountFromExtension(Set<String> extensions, File folder, boolean parseSubFolders) {
-        try {
-            HashMap<String, Integer> fileAmountFromExtension = new HashMap<>();
-
-            Files.walkFileTree(Paths.get(folder.getPath()), new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
-                    String extension = FilenameUtils.getExtension(path.toFile().getName());
-
-                    if (extensions.contains(extension)) {
-                        fileAmountFromExtension.putIfAbsent(extension, 0);
-                        fileAmountFromExtension.put(extension, fileAmountFromExtension.get(extension) + 1);
-                    }
-                    return FileVisitResult.CONTINUE;
-                }
-
-                @Override
-                public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes basicFileAttributes) throws IOException {
-                    if (!parseSubFolders && !path.toString().equals(folder.getPath())) {
-                        return FileVisitResult.SKIP_SUBTREE;
-                    } else {
-                        return FileVisitResult.CONTINUE;
-                    }
-                }
-
-                @Override
-                public FileVisitResult visitFileFailed(Path file, IOException ex) {
-                    log.error(file.toFile().getPath() + ": " + ex.getMessage());
-                    return FileVisitResult.CONTINUE;
-                }
-            });
-
-            return fileAmountFromExtension;
-        } catch (IOException ex) {
-            log.error(ex.getMessage(), ex);
-            return null;
+    /**
+     * The bulk-load profile is used for the initial ingest of a case (an empty index),
+     * unless the case overrides this with the "BulkLoad" setting (true or false).
+     */
+    private boolean isBulkLoad() {
+        String bulkLoad = kmeelAPI.settings().get("BulkLoad");
+
+        if (bulkLoad != null) {
+            return Boolean.parseBoolean(bulkLoad);
+        }
+        return kmeelAPI.indexer().getIndexWriter() != null && kmeelAPI.indexer().getIndexWriter().maxDoc() == 0;
+    }
+
+    /**
+     * @return The RAM buffer used while bulk loading, a quarter of the heap (at most 512MB)
+     * unless the case overrides this with the "BulkRAMBufferMB" setting.
+     */
+    private double getBulkRAMBufferMB() {
+        long quarterHeapMB = Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024);
+
+        return kmeelAPI.settings().getInt("BulkRAMBufferMB", (int) Math.min(512, quarterHeapMB));
+    }
+
+    /**
+     * @return Half of the available processors (at most 4), the rest is used for parsing.
+     */
+    private int getDefaultMergeThreads() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * @return How often the index is committed while parsing, which is
+     * every 5 minutes unless the case overrides this with the "CheckpointMinutes" setting.
+     */
+    private long getCheckpointMinutes() {
+        return Math.max(1, kmeelAPI.settings().getInt("CheckpointMinutes", 5));
+    }
+
+    /**
+     * @return A list of the (enabled) parsers with these names.
+     */
+    private List<BatchParser> getParsers(Map<String, BatchParser> parserFromName, List<String> names) {
+        List<BatchParser> parsers = new ArrayList<>();
+
+        for (String name : names) {
+            if (parserFromName.containsKey(name)) {
+                parsers.add(parserFromName.get(name));
+            }
         }
+        return parsers;
+    }
+
+    /**
+     * Stops the current ingest, files which are being parsed are finished first.
+     * The finished listener is still called.
+     */
+    public void cancel() {
+        isCancelled = true;
+        if (scheduler != null) scheduler.cancel();
     }
 
     /**
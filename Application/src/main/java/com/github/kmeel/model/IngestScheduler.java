@@ -0,0 +1,221 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.model;
+
+import com.github.kmeel.api.model.objects.ConcurrencyHints;
+import com.github.kmeel.api.model.objects.ParseResult;
+import com.github.kmeel.api.spi.BatchParser;
+import com.github.kmeel.api.spi.ParseHandle;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * @author Marten4n6
+ *         Hands files to parsers in batches (BatchParser::getConcurrencyHints),
+ *         a parser never runs more batches at once than it declares.
+ *         A file is finished once every parser reported it to its ParseHandle.
+ */
+@Slf4j
+class IngestScheduler {
+
+    private final ExecutorService workers;
+    private final Semaphore waitingFiles;
+    private final Phaser runningFiles = new Phaser(1);
+
+    private final HashMap<BatchParser, List<File>> pendingBatches = new HashMap<>();
+    private final HashMap<BatchParser, Queue<List<File>>> waitingBatches = new HashMap<>();
+    private final HashMap<BatchParser, Integer> runningBatches = new HashMap<>();
+    private final HashMap<BatchParser, Integer> totalFilesFromParser = new HashMap<>();
+
+    private final Set<ParseHandle> runningHandles = ConcurrentHashMap.newKeySet();
+    private final Map<File, AtomicInteger> runningParsersFromFile = new ConcurrentHashMap<>();
+    private volatile boolean isCancelled = false;
+
+    private final Consumer<File> fileFinishedListener;
+
+    /**
+     * @param workerAmount         Used to limit the amount of files waiting in memory.
+     * @param fileFinishedListener Called once all parsers are finished with a file.
+     */
+    IngestScheduler(int workerAmount, Consumer<File> fileFinishedListener) {
+        this.fileFinishedListener = fileFinishedListener;
+
+        workers = Executors.newFixedThreadPool(workerAmount);
+        waitingFiles = new Semaphore(workerAmount * 4); // Keeps the queue of files in memory small
+    }
+
+    /**
+     * Queues the file for all specified parsers, blocks while too many files are waiting.
+     *
+     * @param totalFiles The amount of files each parser accepts.
+     */
+    void submit(File file, List<BatchParser> parsers, ToIntFunction<BatchParser> totalFiles) {
+        try {
+            if (!waitingFiles.tryAcquire()) {
+                // Files in incomplete batches would otherwise never be released
+                queuePendingBatches();
+                waitingFiles.acquire();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (isCancelled) {
+            waitingFiles.release();
+            return;
+        }
+        if (runningParsersFromFile.putIfAbsent(file, new AtomicInteger(parsers.size())) != null) {
+            // Already being parsed, it would be registered twice but only finish once
+            log.warn("Skipped " + file.getPath() + ", it's already being parsed.");
+            waitingFiles.release();
+            return;
+        }
+        runningFiles.register();
+
+        for (BatchParser parser : parsers) {
+            addToBatch(parser, file, totalFiles.applyAsInt(parser));
+        }
+    }
+
+    /**
+     * Blocks until every submitted file is finished, then stops the workers.
+     */
+    void awaitCompletion() {
+        queuePendingBatches();
+
+        runningFiles.arriveAndAwaitAdvance();
+        workers.shutdown();
+    }
+
+    /**
+     * Stops handing out files and cancels the running batches, awaitCompletion returns once they stopped.
+     */
+    void cancel() {
+        isCancelled = true;
+        List<File> skippedFiles = new ArrayList<>();
+
+        synchronized (this) {
+            pendingBatches.values().forEach(skippedFiles::addAll);
+            waitingBatches.values().forEach(batches -> batches.forEach(skippedFiles::addAll));
+            pendingBatches.clear();
+            waitingBatches.clear();
+        }
+        runningHandles.forEach(ParseHandle::cancel);
+
+        // Once for every parser the file was waiting for
+        skippedFiles.forEach(this::fileFinished);
+    }
+
+    private synchronized void addToBatch(BatchParser parser, File file, int totalFiles) {
+        totalFilesFromParser.put(parser, totalFiles);
+
+        List<File> batch = pendingBatches.computeIfAbsent(parser, key -> new ArrayList<>());
+        batch.add(file);
+
+        if (batch.size() >= Math.max(1, parser.getConcurrencyHints().getBatchSize())) {
+            pendingBatches.remove(parser);
+            queue(parser, batch);
+        }
+    }
+
+    private synchronized void queuePendingBatches() {
+        new ArrayList<>(pendingBatches.keySet()).forEach(parser -> queue(parser, pendingBatches.remove(parser)));
+    }
+
+    private synchronized void queue(BatchParser parser, List<File> batch) {
+        waitingBatches.computeIfAbsent(parser, key -> new ArrayDeque<>()).add(batch);
+        dispatch(parser);
+    }
+
+    private synchronized void batchFinished(BatchParser parser) {
+        runningBatches.put(parser, runningBatches.get(parser) - 1);
+        dispatch(parser);
+    }
+
+    /**
+     * Hands waiting batches of the parser to the workers as long as the parser accepts more batches.
+     */
+    private void dispatch(BatchParser parser) {
+        Queue<List<File>> batches = waitingBatches.get(parser);
+        ConcurrencyHints concurrencyHints = parser.getConcurrencyHints();
+        int maxConcurrentBatches = Math.max(1, concurrencyHints.getMaxConcurrentBatches());
+
+        while (batches != null && !batches.isEmpty() && runningBatches.getOrDefault(parser, 0) < maxConcurrentBatches) {
+            runningBatches.merge(parser, 1, Integer::sum);
+
+            List<File> batch = batches.poll();
+            workers.execute(() -> parseBatch(parser, batch, totalFilesFromParser.get(parser)));
+        }
+    }
+
+    private void parseBatch(BatchParser parser, List<File> batch, int totalFiles) {
+        ParseHandle handle;
+
+        try {
+            handle = parser.parseFiles(batch, totalFiles, this::fileFinished);
+        } catch (Exception ex) {
+            log.error(parser.getName() + " failed to parse " + batch.size() + " file(s): " + ex.getMessage(), ex);
+
+            batch.forEach(this::fileFinished);
+            batchFinished(parser);
+            return;
+        }
+
+        runningHandles.add(handle);
+        if (isCancelled) handle.cancel();
+
+        handle.getResult().whenComplete((result, throwable) -> {
+            runningHandles.remove(handle);
+            if (result != null) logResult(parser, result);
+
+            batchFinished(parser);
+        });
+    }
+
+    private void logResult(BatchParser parser, ParseResult result) {
+        result.getFailedFiles().forEach((file, throwable) -> {
+            log.error(parser.getName() + " failed to parse " + file.getPath() + ": " + throwable.getMessage(), throwable);
+        });
+
+        if (result.getParsedFiles() > 1) {
+            log.debug(parser.getName() + " parsed " + result.getParsedFiles() + " files (" + String.format("%.1f", result.getFilesPerSecond()) + " files/s).");
+        }
+    }
+
+    /**
+     * Called by every parser of the file.
+     */
+    private void fileFinished(File file) {
+        AtomicInteger runningParsers = runningParsersFromFile.get(file);
+
+        if (runningParsers != null && runningParsers.decrementAndGet() == 0) {
+            runningParsersFromFile.remove(file);
+
+            waitingFiles.release();
+            fileFinishedListener.accept(file);
+            runningFiles.arriveAndDeregister();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.model;
+
+import com.github.kmeel.api.KmeelAPI;
+import com.github.kmeel.api.spi.BatchParser;
+import com.github.kmeel.model.objects.SourceFile;
+import com.github.kmeel.model.objects.SourceManifest;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * @author Marten4n6
+ *         Walks the sources once (in parallel across subdirectories) and creates a SourceManifest,
+ *         which is used for the case size, the progress totals and the files to parse.
+ */
+@Slf4j
+public class SourceDiscovery {
+
+    private static final ForkJoinPool walkPool = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+
+    private SourceDiscovery() {}
+
+    /**
+     * @param kmeelAPI   API used to get the parsers.
+     * @param sources    A single folder or a list of files.
+     * @param subFolders If the subfolders of a folder source should be included.
+     * @return The manifest of the sources, which can be passed on to the FileParser so a new case is only walked once.
+     */
+    public static SourceManifest discover(KmeelAPI kmeelAPI, List<String> sources, boolean subFolders) {
+        boolean isFolder = !sources.isEmpty() && new File(sources.get(0)).isDirectory();
+        boolean includeSubFolders = isFolder && subFolders;
+
+        Map<String, List<String>> parsersFromExtension = getParsersFromExtension(kmeelAPI);
+        List<SourceFile> files;
+
+        if (isFolder) {
+            files = walkPool.invoke(new DirectoryWalker(Paths.get(sources.get(0)), includeSubFolders, parsersFromExtension));
+        } else {
+            files = new ArrayList<>();
+            Set<Path> addedPaths = new HashSet<>();
+
+            for (String source : sources) {
+                Path path = Paths.get(source);
+
+                // The same file may be given more than once (or by a different path)
+                if (!addedPaths.add(path.toAbsolutePath().normalize())) continue;
+
+                SourceFile sourceFile = createSourceFile(path, parsersFromExtension);
+
+                if (sourceFile != null) files.add(sourceFile);
+            }
+        }
+
+        SourceManifest manifest = new SourceManifest(new ArrayList<>(sources), includeSubFolders, files);
+
+        log.info("Discovered " + files.size() + " files in the sources.");
+        return manifest;
+    }
+
+    /**
+     * @return A map of lowercase extensions to the names of the parsers accepting them, built once per discovery.
+     */
+    private static Map<String, List<String>> getParsersFromExtension(KmeelAPI kmeelAPI) {
+        Map<String, List<String>> parsersFromExtension = new HashMap<>();
+
+        for (BatchParser parser : kmeelAPI.plugins().getParsers()) {
+            for (String extension : parser.getAcceptedExtensions()) {
+                parsersFromExtension.computeIfAbsent(extension.toLowerCase(), key -> new ArrayList<>()).add(parser.getName());
+            }
+        }
+        parsersFromExtension.replaceAll((extension, parsers) -> Collections.unmodifiableList(parsers));
+        return parsersFromExtension;
+    }
+
+    /**
+     * @return The SourceFile or null if no parser accepts the file.
+     */
+    private static SourceFile createSourceFile(Path path, Map<String, List<String>> parsersFromExtension) {
+        String extension = FilenameUtils.getExtension(path.getFileName().toString()).toLowerCase();
+        List<String> parsers = parsersFromExtension.get(extension);
+
+        if (parsers == null) return null;
+
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+            if (!attributes.isRegularFile()) return null;
+
+            return new SourceFile(path.toString(), attributes.size(), attributes.lastModifiedTime().toMillis(), extension, parsers);
+        } catch (IOException ex) {
+            log.error(path.toString() + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Lists a directory and forks a walker for each subdirectory,
+     * the results are joined in listing order.
+     */
+    private static class DirectoryWalker extends RecursiveTask<List<SourceFile>> {
+
+        private final Path directory;
+        private final boolean subFolders;
+        private final Map<String, List<String>> parsersFromExtension;
+
+        DirectoryWalker(Path directory, boolean subFolders, Map<String, List<String>> parsersFromExtension) {
+            this.directory = directory;
+            this.subFolders = subFolders;
+            this.parsersFromExtension = parsersFromExtension;
+        }
+
+        @Override
+        protected List<SourceFile> compute() {
+            List<SourceFile> files = new ArrayList<>();
+            List<DirectoryWalker> walkers = new ArrayList<>();
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                        if (subFolders) {
+                            DirectoryWalker walker = new DirectoryWalker(path, true, parsersFromExtension);
+
+                            walker.fork();
+                            walkers.add(walker);
+                        }
+                    } else {
+                        SourceFile sourceFile = createSourceFile(path, parsersFromExtension);
+
+                        if (sourceFile != null) files.add(sourceFile);
+                    }
+                }
+            } catch (IOException ex) {
+                log.error(directory.toString() + ": " + ex.getMessage());
+            }
+
+            for (DirectoryWalker walker : walkers) {
+                files.addAll(walker.join());
+            }
+            return files;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.model.objects;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * @author Marten4n6
+ *         A file found in the sources which at least one parser accepts.
+ */
+@Data
+public class SourceFile {
+
+    private final String path;
+    private final long size;
+    private final long lastModified;
+    private final String extension;
+
+    /**
+     * Names of the parsers that accept this file (shared between files with the same extension).
+     */
+    private final List<String> parsers;
+}
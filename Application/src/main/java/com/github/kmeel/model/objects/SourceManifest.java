@@ -0,0 +1,61 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.model.objects;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Marten4n6
+ *         Every parseable file of the case sources, created by the SourceDiscovery.
+ */
+public class SourceManifest {
+
+    private final @Getter List<String> sources;
+    private final @Getter boolean subFolders;
+    private final @Getter List<SourceFile> files;
+
+    private final @Getter long totalSize;
+    private final Map<String, Integer> fileAmountFromParser = new HashMap<>();
+
+    public SourceManifest(List<String> sources, boolean subFolders, List<SourceFile> files) {
+        this.sources = sources;
+        this.subFolders = subFolders;
+        this.files = Collections.unmodifiableList(files);
+
+        long size = 0;
+
+        for (SourceFile file : files) {
+            size += file.getSize();
+            file.getParsers().forEach(parser -> fileAmountFromParser.merge(parser, 1, Integer::sum));
+        }
+        totalSize = size;
+    }
+
+    /**
+     * @return The amount of files the parser accepts.
+     */
+    public int getFileAmount(String parserName) {
+        return fileAmountFromParser.getOrDefault(parserName, 0);
+    }
+}
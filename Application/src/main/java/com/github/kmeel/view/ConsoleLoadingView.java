@@ -0,0 +1,94 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.view;
+
+import com.github.kmeel.api.KmeelAPI;
+import com.github.kmeel.api.view.LoadingView;
+import javafx.concurrent.Task;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Marten4n6
+ *         Prints the progress of parsers to stdout instead of showing a window,
+ *         used by the command-line mode which never starts the FX toolkit.
+ */
+@Slf4j
+public class ConsoleLoadingView extends LoadingView {
+
+    private static final long PRINT_INTERVAL = TimeUnit.SECONDS.toNanos(2);
+
+    private KmeelAPI kmeelAPI;
+
+    private final long startTime = System.nanoTime();
+    private final AtomicLong lastPrint = new AtomicLong(0);
+    private long initialDocuments = 0;
+
+    private volatile long finishedFiles = 0;
+    private volatile long totalFiles = 0;
+
+    public ConsoleLoadingView(KmeelAPI kmeelAPI) {
+        this.kmeelAPI = kmeelAPI;
+    }
+
+    @Override
+    public void show() {
+        initialDocuments = kmeelAPI.indexer().getIndexWriter().numDocs();
+        System.out.println("Parsing sources of \"" + kmeelAPI.getCaseObject().getName() + "\"...");
+    }
+
+    /**
+     * Parsers shouldn't add tasks in command-line mode (see KmeelAPI::isHeadless).
+     */
+    @Override
+    public void addTask(Task task) {
+        log.warn("Ignored a loading task, there is no loading window in command-line mode.");
+    }
+
+    @Override
+    public void updateProgress(long finished, long total) {
+        finishedFiles = finished;
+        totalFiles = total;
+
+        long now = System.nanoTime();
+        long previousPrint = lastPrint.get();
+
+        if ((now - previousPrint >= PRINT_INTERVAL || finished == total) && lastPrint.compareAndSet(previousPrint, now)) {
+            System.out.println(getProgress());
+        }
+    }
+
+    /**
+     * @return The parsed files and indexed documents, including how many per second.
+     */
+    public String getProgress() {
+        double seconds = Math.max((System.nanoTime() - startTime) / 1_000_000_000.0, 0.001);
+        long documents = kmeelAPI.indexer().getIndexWriter().numDocs();
+
+        return String.format("Parsed %d of %d files (%.1f files/s), %d documents (%.0f documents/s), %.0fs elapsed",
+                finishedFiles, totalFiles, finishedFiles / seconds, documents, (documents - initialDocuments) / seconds, seconds);
+    }
+
+    @Override
+    public void close() {
+        System.out.println(getProgress());
+    }
+}
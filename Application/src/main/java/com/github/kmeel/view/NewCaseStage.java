@@ -22,10 +22,13 @@ import com.github.kmeel.api.KmeelAPI;
 import com.github.kmeel.api.model.Cases;
 import com.github.kmeel.api.model.Plugins;
 import com.github.kmeel.api.model.objects.Case;
+import com.github.kmeel.model.SourceDiscovery;
+import com.github.kmeel.model.objects.SourceManifest;
 import com.google.gson.Gson;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -41,18 +44,13 @@ import javafx.stage.Stage;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FilenameUtils;
 import ro.fortsoft.pf4j.PluginDescriptor;
 
 import java.awt.event.ActionListener;
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Marten4n6
@@ -63,6 +61,8 @@ public class NewCaseStage extends Stage {
 
     private @Getter KmeelAPI kmeelAPI;
     private @Getter Case caseObject;
+    // The files discovered while creating the case, passed on to the FileParser so the sources are only walked once
+    private @Getter SourceManifest sourceManifest;
 
     private CheckBox checkBoxOpen;
     private ArrayList<String> disabledPlugins = new ArrayList<>();
@@ -228,27 +228,53 @@ public class NewCaseStage extends Stage {
             } else if (sources.isEmpty()) {
                 new Alert(Alert.AlertType.ERROR, "Invalid source.", ButtonType.CLOSE).showAndWait();
             } else {
-                caseObject = new Case(
-                        fieldCaseName.getText(),
-                        fieldDescription.getText(),
-                        fieldInvestigator.getText(),
-                        humanReadableByteCount(getSourceSize(kmeelAPI, sources, checkBoxHasSubFolders.isSelected())),
-                        sources,
-                        disabledPlugins
-                );
-                kmeelAPI.setCase(caseObject);
-
-                if (new File(sources.get(0)).isDirectory()) {
-                    caseObject.setHasSubFolders(checkBoxHasSubFolders.isSelected());
-                }
+                boolean hasSubFolders = checkBoxHasSubFolders.isSelected();
+
+                createCase.setDisable(true);
+                createCase.setText("Discovering source files...");
+
+                // Walking a large source can take a while, keep the UI responsive
+                Task<SourceManifest> discoveryTask = new Task<SourceManifest>() {
+                    @Override
+                    protected SourceManifest call() throws Exception {
+                        return SourceDiscovery.discover(kmeelAPI, sources, hasSubFolders);
+                    }
+                };
+
+                discoveryTask.setOnSucceeded((event2) -> {
+                    sourceManifest = discoveryTask.getValue();
+                    caseObject = new Case(
+                            fieldCaseName.getText(),
+                            fieldDescription.getText(),
+                            fieldInvestigator.getText(),
+                            humanReadableByteCount(discoveryTask.getValue().getTotalSize()),
+                            sources,
+                            disabledPlugins
+                    );
+                    kmeelAPI.setCase(caseObject);
+
+                    if (new File(sources.get(0)).isDirectory()) {
+                        caseObject.setHasSubFolders(hasSubFolders);
+                    }
 
-                Cases.storeCaseObject(caseObject);
+                    Cases.storeCaseObject(caseObject);
 
-                // Default settings
-                kmeelAPI.settings().set("SearchLimit", "0");
-                kmeelAPI.settings().set("DateFormat", "EEE, d MMM yyyy HH:mm:ss");
+                    // Default settings
+                    kmeelAPI.settings().set("SearchLimit", "0");
+                    kmeelAPI.settings().set("DateFormat", "EEE, d MMM yyyy HH:mm:ss");
+                    kmeelAPI.settings().set("SourceHashing", "false");
 
-                onCreateCase.actionPerformed(null);
+                    onCreateCase.actionPerformed(null);
+                });
+                discoveryTask.setOnFailed((event2) -> {
+                    log.error(discoveryTask.getException().getMessage(), discoveryTask.getException());
+
+                    createCase.setDisable(false);
+                    createCase.setText("Create Case");
+                    new Alert(Alert.AlertType.ERROR, "Failed to read the source.", ButtonType.CLOSE).showAndWait();
+                });
+
+                new Thread(discoveryTask).start();
             }
         });
         return tab;
@@ -316,45 +342,6 @@ public class NewCaseStage extends Stage {
         return checkBoxOpen.isSelected();
     }
 
-    private long getSourceSize(KmeelAPI kmeelAPI, List<String> sources, boolean extractSubFolders) {
-        final AtomicLong sourceSize = new AtomicLong(0);
-
-        if (new File(sources.get(0)).isDirectory()) {
-            try {
-                Files.walkFileTree(Paths.get(sources.get(0)), new SimpleFileVisitor<Path>() {
-                    @Override
-                    public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
-                        if (kmeelAPI.messages().getSupportedFileExtensions().contains(FilenameUtils.getExtension(path.toString()).toLowerCase())) {
-                            sourceSize.addAndGet(path.toFile().length());
-                        }
-                        return FileVisitResult.CONTINUE;
-                    }
-
-                    @Override
-                    public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes basicFileAttributes) throws IOException {
-                        if (!extractSubFolders && !path.toString().equals(sources.get(0))) {
-                            return FileVisitResult.SKIP_SUBTREE;
-                        } else {
-                            return FileVisitResult.CONTINUE;
-                        }
-                    }
-
-                    @Override
-                    public FileVisitResult visitFileFailed(Path file, IOException ex) {
-                        return FileVisitResult.CONTINUE;
-                    }
-                });
-            } catch (IOException ex) {
-                log.error(ex.getMessage(), ex);
-            }
-        } else {
-            for (String source : sources) {
-                sourceSize.addAndGet(new File(source).length());
-            }
-        }
-        return sourceSize.get();
-    }
-
     /**
      * @return A human readable byte size
      */
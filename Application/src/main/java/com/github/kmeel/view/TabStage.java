@@ -18,6 +18,7 @@
 
 package com.github.kmeel.view;
 
+import com.github.kmeel.api.KmeelAPI;
 import com.github.kmeel.api.model.Version;
 import com.github.kmeel.api.spi.GlobalTab;
 import com.github.kmeel.controller.HomeController;
@@ -45,6 +46,9 @@ public class TabStage extends Stage {
     private HomeTab homeTab;
     private HomeController homeController;
 
+    // The case of the current tabs
+    private KmeelAPI kmeelAPI;
+
     public TabStage() {
         setupStage();
         setupListeners();
@@ -72,6 +76,7 @@ public class TabStage extends Stage {
      */
     private void setupListeners() {
         this.setOnCloseRequest((WindowEvent event) -> {
+            closeCase();
             log.info("Shutting down, goodbye.");
 
             Platform.exit();
@@ -79,18 +84,21 @@ public class TabStage extends Stage {
         });
 
         homeTab.setOnNewCase((event) -> {
+            closeCase();
             Platform.runLater(() -> tabPane.getTabs().removeIf(tab -> !tab.getText().equals("Home")));
         });
         homeTab.setOnOpenCase((event) -> {
+            closeCase();
             Platform.runLater(() -> tabPane.getTabs().removeIf(tab -> !tab.getText().equals("Home")));
         });
         homeTab.setOnRemoveCase((event) -> {
+            closeCase();
             Platform.runLater(() -> tabPane.getTabs().removeIf(tab -> !tab.getText().equals("Home")));
         });
-        homeController.setOnFinishedParsing((kmeelAPI, loadingView) -> {
-            loadingView.close();
-            kmeelAPI.indexer().close();
+        homeController.setOnStartedParsing((kmeelAPI, loadingView) -> {
+            this.kmeelAPI = kmeelAPI;
 
+            // Messages can already be searched while the rest is being parsed
             Platform.runLater(() -> {
                 kmeelAPI.plugins().getPluginManager().getExtensions(GlobalTab.class).forEach(globalTab -> {
                     Tab tab = globalTab.getGlobalTab(kmeelAPI);
@@ -111,6 +119,19 @@ public class TabStage extends Stage {
                 tabPane.getSelectionModel().select(1);
             });
         });
+        homeController.setOnFinishedParsing((kmeelAPI, loadingView) -> {
+            loadingView.close();
+            kmeelAPI.indexer().close();
+            kmeelAPI.searcher().refresh();
+        });
+    }
+
+    private void closeCase() {
+        if (kmeelAPI != null) {
+            kmeelAPI.logCacheMetrics();
+            kmeelAPI.closeSearcher();
+            kmeelAPI = null;
+        }
     }
 
     private int getIndexAfterTab(String tabName, TabPane tabPane) {
@@ -19,12 +19,15 @@
 package com.github.kmeel.api;
 
 import com.github.kmeel.api.model.*;
+import com.github.kmeel.api.model.objects.CachedMessage;
 import com.github.kmeel.api.model.objects.Case;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * @author Marten4n6
  */
+@Slf4j
 public class KmeelAPI {
 
     private @Getter Case caseObject;
@@ -33,9 +36,13 @@ public class KmeelAPI {
     private Bookmarks bookmarks;
     private Indexer indexer;
     private Searcher searcher;
+    private Sources sources;
     private Messages messages;
     private Settings settings;
     private Tags tags;
+    private MessageCache<CachedMessage> messageCache;
+    private MessageCache<byte[]> attachmentCache;
+    private FieldLimits fieldLimits;
 
     public KmeelAPI(Case caseObject) {
         this.caseObject = caseObject;
@@ -43,6 +50,14 @@ public class KmeelAPI {
         messages = new Messages(plugins());
     }
 
+    /**
+     * @return True when Kmeel runs without JavaFX (the command-line mode),
+     * in which case plugins shouldn't use the FX toolkit.
+     */
+    public static boolean isHeadless() {
+        return Boolean.getBoolean("kmeel.headless");
+    }
+
     public void setCase(Case caseObject) {
         if (this.caseObject != null) throw new IllegalArgumentException("Case object already set.");
         this.caseObject = caseObject;
@@ -66,20 +81,42 @@ public class KmeelAPI {
         return bookmarks;
     }
 
-    public Indexer indexer() {
+    public synchronized Indexer indexer() {
         if (indexer == null && caseObject != null) {
             indexer = new Indexer(caseObject.getName());
         }
         return indexer;
     }
 
-    public Searcher searcher() {
+    public synchronized Searcher searcher() {
         if (searcher == null && caseObject != null) {
-            searcher = new Searcher(caseObject.getName());
+            searcher = new Searcher(
+                    caseObject.getName(),
+                    indexer(),
+                    settings().getInt("SearchRefreshSeconds", 5),
+                    settings().getInt("SearchThreads", Runtime.getRuntime().availableProcessors())
+            );
         }
         return searcher;
     }
 
+    /**
+     * Closes the searcher (and its open cursors) of the case, called when the case is closed.
+     */
+    public synchronized void closeSearcher() {
+        if (searcher != null) {
+            searcher.close();
+            searcher = null;
+        }
+    }
+
+    public Sources sources() {
+        if (sources == null && caseObject != null) {
+            sources = new Sources(caseObject.getName(), indexer(), settings());
+        }
+        return sources;
+    }
+
     public Settings settings() {
         if (settings == null && caseObject != null) {
             settings = new Settings(caseObject.getName());
@@ -91,6 +128,49 @@ public class KmeelAPI {
         return messages;
     }
 
+    /**
+     * @return The limits of indexed text fields, shared by all parsers so truncated fields are counted once per case.
+     */
+    public synchronized FieldLimits fieldLimits() {
+        if (fieldLimits == null && caseObject != null) {
+            fieldLimits = new FieldLimits(settings());
+        }
+        return fieldLimits;
+    }
+
+    /**
+     * @return The decoded messages of this case, limited by the "MessageCacheMB" setting (64MB by default).
+     */
+    public synchronized MessageCache<CachedMessage> messageCache() {
+        if (messageCache == null && caseObject != null) {
+            long maxBytes = settings().getInt("MessageCacheMB", 64) * 1024L * 1024L;
+
+            messageCache = new MessageCache<>("Message cache", maxBytes, CachedMessage::getWeight);
+        }
+        return messageCache;
+    }
+
+    /**
+     * @return The recently opened attachment contents of this case, limited by the "AttachmentCacheMB" setting (32MB by default).
+     * @see com.github.kmeel.api.model.objects.LazyAttachment
+     */
+    public synchronized MessageCache<byte[]> attachmentCache() {
+        if (attachmentCache == null && caseObject != null) {
+            long maxBytes = settings().getInt("AttachmentCacheMB", 32) * 1024L * 1024L;
+
+            attachmentCache = new MessageCache<>("Attachment cache", maxBytes, (bytes) -> 16L + bytes.length);
+        }
+        return attachmentCache;
+    }
+
+    /**
+     * Logs the hits, misses and evictions of the caches of this case, called when the case is closed.
+     */
+    public synchronized void logCacheMetrics() {
+        if (messageCache != null) log.info(messageCache.toString());
+        if (attachmentCache != null) log.info(attachmentCache.toString());
+    }
+
     public Tags tags() {
         if (tags == null && caseObject != null) {
             tags = new Tags(caseObject.getName(), database(), plugins());
@@ -30,6 +30,7 @@ import com.github.kmeel.api.view.MessagePane;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
@@ -145,8 +146,10 @@ public class DefaultContextMenu extends ContextMenu {
 
             if (attachmentList != null && outputDirectory != null) {
                 for (MessageAttachment attachment : attachmentList) {
-                    try {
-                        Files.copy(attachment.getInputStream(), Paths.get(outputDirectory.getPath() + File.separator + attachment.getAttachmentName()), StandardCopyOption.REPLACE_EXISTING);
+                    try (InputStream inputStream = attachment.getInputStream()) {
+                        if (inputStream == null) continue;
+
+                        Files.copy(inputStream, Paths.get(outputDirectory.getPath() + File.separator + attachment.getAttachmentName()), StandardCopyOption.REPLACE_EXISTING);
                     } catch (IOException ex) {
                         log.error(ex.getMessage(), ex);
                     }
@@ -0,0 +1,342 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.model;
+
+import com.github.kmeel.api.model.objects.ID;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.packed.PackedInts;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Marten4n6
+ *         Finds the document of an ID and its (StringField) values without running
+ *         a query, used when a message is looked up by its ID.
+ *         <p>
+ *         IDs are looked up in the terms dictionary of each segment. The values of a field which repeat
+ *         (like the PST or folder of a message) are read once per segment from its terms into a packed table
+ *         (document to value number), which only takes a few bits per document.
+ *         Fields with (nearly) unique values like the path of an EML are read from the stored fields of the document instead.
+ *         Tables of merged or deleted segments are removed when the segment is closed.
+ *         <p>
+ *         The documents with a value (like the messages of a folder) are read once per segment into a sorted
+ *         array, deletions are applied when it's used so it stays valid until the segment is merged away.
+ */
+@Slf4j
+public class DocumentLookup {
+
+    // A field with more distinct values than this part of the documents isn't kept in a table
+    private static final int MAX_VALUES_PART = 4;
+    private static final SegmentValues STORED_VALUES = new SegmentValues(new String[0], null);
+
+    private final Searcher searcher;
+
+    // Segment core (shared by all refreshed readers of the segment) -> field -> values
+    private final Map<Object, Map<String, SegmentValues>> valuesFromSegment = new ConcurrentHashMap<>();
+    // Segment core -> field and value -> documents
+    private final Map<Object, Map<Term, int[]>> docsFromSegment = new ConcurrentHashMap<>();
+
+    DocumentLookup(Searcher searcher) {
+        this.searcher = searcher;
+    }
+
+    /**
+     * @return The document ID of the ID in the searcher, -1 if there is none.
+     */
+    public int getDocID(IndexSearcher indexSearcher, ID id) {
+        LeafReaderContext context = getContext(indexSearcher, id);
+        return context != null ? context.docBase + findDoc(context, id) : -1;
+    }
+
+    /**
+     * @return The value of the field, null if there is no document with this ID or it has no value.
+     */
+    public String getValue(IndexSearcher indexSearcher, ID id, String field) {
+        LeafReaderContext context = getContext(indexSearcher, id);
+
+        if (context == null) return null;
+
+        try {
+            SegmentValues values = getSegmentValues(context.reader(), field);
+            int doc = findDoc(context, id);
+
+            if (values == STORED_VALUES) {
+                return context.reader().document(doc, Collections.singleton(field)).get(field);
+            }
+            return values.get(doc);
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+            return null;
+        }
+    }
+
+    /**
+     * @see #getValue(IndexSearcher, ID, String)
+     */
+    public String getValue(ID id, String field) {
+        IndexSearcher indexSearcher = searcher.acquire();
+
+        if (indexSearcher == null) return null;
+
+        try {
+            return getValue(indexSearcher, id, field);
+        } finally {
+            searcher.release(indexSearcher);
+        }
+    }
+
+    /**
+     * @return The (sorted) document IDs in the searcher which have the value, for example all messages of a folder.
+     */
+    public int[] getDocIDs(IndexSearcher indexSearcher, String field, String value) {
+        if (indexSearcher == null || value == null) return new int[0];
+
+        Term term = new Term(field, value);
+        List<LeafReaderContext> leaves = indexSearcher.getIndexReader().leaves();
+        int[][] segmentDocs = new int[leaves.size()][];
+        int maxCount = 0;
+
+        try {
+            for (int i = 0; i < leaves.size(); i++) {
+                segmentDocs[i] = getSegmentDocs(leaves.get(i).reader(), term);
+                maxCount += segmentDocs[i].length;
+            }
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+            return new int[0];
+        }
+
+        int[] docIDs = new int[maxCount];
+        int count = 0;
+
+        for (int i = 0; i < leaves.size(); i++) {
+            LeafReaderContext context = leaves.get(i);
+            Bits liveDocs = context.reader().getLiveDocs();
+
+            for (int doc : segmentDocs[i]) {
+                if (liveDocs == null || liveDocs.get(doc)) docIDs[count++] = context.docBase + doc;
+            }
+        }
+        return count == maxCount ? docIDs : Arrays.copyOf(docIDs, count);
+    }
+
+    /**
+     * @return The (sorted) document IDs in the searcher which have any of the values, for example all messages of multiple folders.
+     */
+    public int[] getDocIDs(IndexSearcher indexSearcher, String field, Collection<String> values) {
+        if (indexSearcher == null || values.isEmpty()) return new int[0];
+        if (values.size() == 1) return getDocIDs(indexSearcher, field, values.iterator().next());
+
+        // Union of the values, the bits are iterated in order so the result is sorted without duplicates
+        FixedBitSet union = new FixedBitSet(Math.max(1, indexSearcher.getIndexReader().maxDoc()));
+
+        for (String value : values) {
+            for (int docID : getDocIDs(indexSearcher, field, value)) {
+                union.set(docID);
+            }
+        }
+
+        int[] docIDs = new int[union.cardinality()];
+        int count = 0;
+        DocIdSetIterator iterator = new BitSetIterator(union, docIDs.length);
+
+        try {
+            for (int docID = iterator.nextDoc(); docID != DocIdSetIterator.NO_MORE_DOCS; docID = iterator.nextDoc()) {
+                docIDs[count++] = docID;
+            }
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+        }
+        return docIDs;
+    }
+
+    /**
+     * @return The IDs of the document IDs (in the same order).
+     */
+    public List<ID> getIDs(IndexSearcher indexSearcher, int[] docIDs) {
+        List<ID> ids = new ArrayList<>(docIDs.length);
+        Set<String> fields = Collections.singleton("ID");
+
+        try {
+            for (int docID : docIDs) {
+                String id = indexSearcher.doc(docID, fields).get("ID");
+
+                if (id != null) ids.add(new ID(id));
+            }
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+        }
+        return ids;
+    }
+
+    /**
+     * @return The segment containing the (not deleted) document of the ID, null if there is none.
+     */
+    private LeafReaderContext getContext(IndexSearcher indexSearcher, ID id) {
+        if (indexSearcher == null || id == null) return null;
+
+        for (LeafReaderContext context : indexSearcher.getIndexReader().leaves()) {
+            if (findDoc(context, id) != -1) return context;
+        }
+        return null;
+    }
+
+    /**
+     * @return The document ID within the segment, -1 if it's not in the segment.
+     */
+    private int findDoc(LeafReaderContext context, ID id) {
+        try {
+            Terms terms = context.reader().terms("ID");
+
+            if (terms == null) return -1;
+
+            TermsEnum termsEnum = terms.iterator();
+
+            if (!termsEnum.seekExact(new BytesRef(id.getId()))) return -1;
+
+            Bits liveDocs = context.reader().getLiveDocs();
+            PostingsEnum postings = termsEnum.postings(null, PostingsEnum.NONE);
+
+            for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                if (liveDocs == null || liveDocs.get(doc)) return doc;
+            }
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+        }
+        return -1;
+    }
+
+    private SegmentValues getSegmentValues(LeafReader reader, String field) throws IOException {
+        Object coreKey = reader.getCoreCacheKey();
+        Map<String, SegmentValues> fieldValues = valuesFromSegment.get(coreKey);
+
+        if (fieldValues == null) {
+            fieldValues = new ConcurrentHashMap<>();
+
+            if (valuesFromSegment.putIfAbsent(coreKey, fieldValues) == null) {
+                reader.addCoreClosedListener(valuesFromSegment::remove);
+            }
+            fieldValues = valuesFromSegment.get(coreKey);
+        }
+
+        SegmentValues values = fieldValues.get(field);
+
+        if (values == null) {
+            Terms terms = reader.terms(field);
+
+            if (terms != null && (terms.size() < 0 || terms.size() > reader.maxDoc() / MAX_VALUES_PART)) {
+                // Unique values would take more memory than the documents themselves
+                values = STORED_VALUES;
+            } else {
+                values = SegmentValues.read(reader, field);
+            }
+            fieldValues.put(field, values);
+        }
+        return values;
+    }
+
+    /**
+     * @return The sorted documents of the segment with the term, including deleted ones.
+     */
+    private int[] getSegmentDocs(LeafReader reader, Term term) throws IOException {
+        Object coreKey = reader.getCoreCacheKey();
+        Map<Term, int[]> termDocs = docsFromSegment.get(coreKey);
+
+        if (termDocs == null) {
+            termDocs = new ConcurrentHashMap<>();
+
+            if (docsFromSegment.putIfAbsent(coreKey, termDocs) == null) {
+                reader.addCoreClosedListener(docsFromSegment::remove);
+            }
+            termDocs = docsFromSegment.get(coreKey);
+        }
+
+        int[] docs = termDocs.get(term);
+
+        if (docs == null) {
+            PostingsEnum postings = reader.postings(term, PostingsEnum.NONE);
+            int count = 0;
+
+            docs = new int[postings != null ? Math.max(1, reader.docFreq(term)) : 0];
+
+            if (postings != null) {
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    if (count == docs.length) docs = Arrays.copyOf(docs, count * 2);
+                    docs[count++] = doc;
+                }
+            }
+            docs = count == docs.length ? docs : Arrays.copyOf(docs, count);
+            termDocs.put(term, docs);
+        }
+        return docs;
+    }
+
+    /**
+     * The value of every document in a segment, stored as value number + 1 (0 meaning no value).
+     */
+    private static class SegmentValues {
+
+        private final String[] values;
+        private final PackedInts.Reader valueNumbers;
+
+        private SegmentValues(String[] values, PackedInts.Reader valueNumbers) {
+            this.values = values;
+            this.valueNumbers = valueNumbers;
+        }
+
+        static SegmentValues read(LeafReader reader, String field) throws IOException {
+            Terms terms = reader.terms(field);
+            List<String> values = new ArrayList<>();
+
+            if (terms == null) {
+                return new SegmentValues(new String[0], PackedInts.getMutable(reader.maxDoc(), 1, PackedInts.COMPACT));
+            }
+
+            long valueCount = terms.size() > 0 ? terms.size() : Integer.MAX_VALUE;
+            PackedInts.Mutable valueNumbers = PackedInts.getMutable(reader.maxDoc(), PackedInts.bitsRequired(valueCount + 1), PackedInts.COMPACT);
+
+            TermsEnum termsEnum = terms.iterator();
+            PostingsEnum postings = null;
+
+            for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+                values.add(term.utf8ToString());
+                postings = termsEnum.postings(postings, PostingsEnum.NONE);
+
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    valueNumbers.set(doc, values.size());
+                }
+            }
+            return new SegmentValues(values.toArray(new String[0]), valueNumbers);
+        }
+
+        String get(int doc) {
+            int valueNumber = (int) valueNumbers.get(doc);
+            return valueNumber > 0 ? values[valueNumber - 1] : null;
+        }
+    }
+}
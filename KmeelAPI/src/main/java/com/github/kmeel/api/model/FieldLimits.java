@@ -0,0 +1,85 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.model;
+
+import com.github.kmeel.api.utils.BoundedReader;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Marten4n6
+ *         Adds large text (bodies, headers) to documents as Reader fields which are capped
+ *         at the "MaxFieldChars" setting, so huge messages can't exhaust the heap while indexing.
+ *         Documents with a truncated field get a "Truncated" field with the name of that field.
+ */
+@Slf4j
+public class FieldLimits {
+
+    private final int maxFieldChars;
+    private final AtomicLong truncatedFields = new AtomicLong(0);
+
+    public FieldLimits(Settings settings) {
+        int maxFieldChars = settings.getInt("MaxFieldChars", 1_000_000);
+
+        this.maxFieldChars = maxFieldChars > 0 ? maxFieldChars : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Adds the (unstored) text field, the text isn't copied.
+     *
+     * @param source Used to report truncated fields, null if the text shouldn't be reported.
+     */
+    public void add(Document document, String name, String text, String source) {
+        if (text.length() > maxFieldChars && source != null) {
+            truncated(document, name, source);
+        }
+        document.add(new TextField(name, new BoundedReader(new StringReader(text), maxFieldChars, null)));
+    }
+
+    /**
+     * Counts and reports a field which was cut off (for example while reading it from a source).
+     *
+     * @param document The document to mark as truncated (may be null).
+     */
+    public void truncated(Document document, String name, String source) {
+        truncatedFields.incrementAndGet();
+        log.warn("Truncated the " + name + " field of " + source + " to " + maxFieldChars + " characters.");
+
+        if (document != null) {
+            document.add(new StringField("Truncated", name, Field.Store.YES));
+        }
+    }
+
+    public int getMaxFieldChars() {
+        return maxFieldChars;
+    }
+
+    /**
+     * @return The amount of fields which were truncated since the case was opened, reported once an ingest is finished.
+     */
+    public long getTruncatedFields() {
+        return truncatedFields.get();
+    }
+}
@@ -22,13 +22,21 @@ import lombok.Synchronized;
 import lombok.extern.slf4j.Slf4j;
 import com.github.kmeel.api.utils.OSUtils;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LiveIndexWriterConfig;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Marten4n6
@@ -39,7 +47,14 @@ import java.io.IOException;
 public class Indexer {
 
     private String caseName;
-    private IndexWriter indexWriter;
+    private volatile IndexWriter indexWriter;
+
+    private final List<CheckpointListener> checkpointListeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService checkpointService;
+
+    // Merges are deferred while bulk loading, see startBulkLoad
+    private static final double BULK_SEGMENTS_PER_TIER = 50;
+    private volatile boolean isBulkLoading;
 
     public Indexer(String caseName) {
         this.caseName = caseName;
@@ -50,6 +65,8 @@ public class Indexer {
             try {
                 Directory indexDirectory = FSDirectory.open(new File(OSUtils.getIndexPath(caseName)).toPath());
                 IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+                config.setMergePolicy(new TieredMergePolicy());
+                config.setMergeScheduler(new ConcurrentMergeScheduler());
                 indexWriter = new IndexWriter(indexDirectory, config);
             } catch (IOException ex) {
                 log.error(ex.getMessage(), ex);
@@ -58,14 +75,176 @@ public class Indexer {
         return indexWriter;
     }
 
+    /**
+     * Switches the IndexWriter to a profile for adding a lot of documents at once:
+     * a large RAM buffer, no compound files, more merge threads and merges deferred
+     * until finishBulkLoad. The IndexWriter stays open, only its live settings change.
+     *
+     * @param ramBufferMB  The amount of memory used to buffer documents before a segment is flushed.
+     * @param mergeThreads The amount of threads merging segments in the background.
+     */
+    public synchronized void startBulkLoad(double ramBufferMB, int mergeThreads) {
+        if (getIndexWriter() == null || isBulkLoading) return;
+
+        LiveIndexWriterConfig config = indexWriter.getConfig();
+        TieredMergePolicy mergePolicy = (TieredMergePolicy) config.getMergePolicy();
+        ConcurrentMergeScheduler mergeScheduler = (ConcurrentMergeScheduler) config.getMergeScheduler();
+
+        // Limited by Lucene to 2048MB per indexing thread
+        config.setRAMBufferSizeMB(Math.min(2048, Math.max(IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB, ramBufferMB)));
+        config.setUseCompoundFile(false);
+        mergePolicy.setNoCFSRatio(0);
+
+        // Lets more segments pile up before merging, forceMerge cleans them up at the end
+        mergePolicy.setSegmentsPerTier(BULK_SEGMENTS_PER_TIER);
+        mergePolicy.setMaxMergeAtOnce((int) BULK_SEGMENTS_PER_TIER);
+
+        int threads = Math.max(1, mergeThreads);
+        mergeScheduler.setMaxMergesAndThreads(threads + 5, threads);
+
+        isBulkLoading = true;
+        log.info("Bulk loading with a " + config.getRAMBufferSizeMB() + "MB RAM buffer and " + threads + " merge threads.");
+    }
+
+    /**
+     * Commits the bulk loaded documents, merges the index down to a few segments
+     * and switches back to the default (search-friendly) profile.
+     *
+     * @param maxSegments The amount of segments the index is merged down to, 0 to skip merging.
+     */
+    public synchronized void finishBulkLoad(int maxSegments) {
+        if (indexWriter == null || !isBulkLoading) return;
+
+        LiveIndexWriterConfig config = indexWriter.getConfig();
+        TieredMergePolicy mergePolicy = (TieredMergePolicy) config.getMergePolicy();
+        TieredMergePolicy defaultMergePolicy = new TieredMergePolicy();
+
+        checkpoint();
+
+        try {
+            if (maxSegments > 0) {
+                log.info("Merging the index down to " + maxSegments + " segments...");
+
+                indexWriter.forceMerge(maxSegments);
+                indexWriter.commit();
+            }
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+        } finally {
+            config.setRAMBufferSizeMB(IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB);
+            config.setUseCompoundFile(IndexWriterConfig.DEFAULT_USE_COMPOUND_FILE_SYSTEM);
+            mergePolicy.setNoCFSRatio(defaultMergePolicy.getNoCFSRatio());
+            mergePolicy.setSegmentsPerTier(defaultMergePolicy.getSegmentsPerTier());
+            mergePolicy.setMaxMergeAtOnce(defaultMergePolicy.getMaxMergeAtOnce());
+
+            ((ConcurrentMergeScheduler) config.getMergeScheduler()).setMaxMergesAndThreads(
+                    ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS,
+                    ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS
+            );
+            isBulkLoading = false;
+        }
+    }
+
+    /**
+     * Doesn't lock, searches call this while a checkpoint or merge may be running.
+     *
+     * @return True if the IndexWriter has been opened (and not closed yet).
+     */
+    public boolean isOpen() {
+        IndexWriter currentIndexWriter = indexWriter;
+        return currentIndexWriter != null && currentIndexWriter.isOpen();
+    }
+
+    public boolean isBulkLoading() {
+        return isBulkLoading;
+    }
+
+    /**
+     * Commits the index and lets the listeners persist their progress, in this order:
+     * all listeners drain their progress, all listeners flush their documents,
+     * the index is committed and then all listeners persist the drained progress.
+     * <p>
+     * Progress which is drained before the flush always belongs to documents which are in this commit.
+     */
+    public synchronized void checkpoint() {
+        if (indexWriter == null) return;
+
+        checkpointListeners.forEach(CheckpointListener::drain);
+        checkpointListeners.forEach(CheckpointListener::flush);
+
+        try {
+            indexWriter.commit();
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+            return;
+        }
+
+        checkpointListeners.forEach(CheckpointListener::committed);
+    }
+
+    /**
+     * Creates a checkpoint every few minutes until stopCheckpoints is called.
+     */
+    public synchronized void startCheckpoints(long minutes) {
+        if (checkpointService != null) return;
+
+        checkpointService = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "Index checkpoints");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpointService.scheduleWithFixedDelay(this::checkpoint, minutes, minutes, TimeUnit.MINUTES);
+    }
+
+    public synchronized void stopCheckpoints() {
+        if (checkpointService != null) {
+            checkpointService.shutdown();
+            checkpointService = null;
+        }
+    }
+
+    public void addCheckpointListener(CheckpointListener listener) {
+        checkpointListeners.add(listener);
+    }
+
+    public void removeCheckpointListener(CheckpointListener listener) {
+        checkpointListeners.remove(listener);
+    }
+
     public void close() {
+        stopCheckpoints();
+
         if (indexWriter != null) {
+            checkpoint();
+
             try {
-                indexWriter.commit();
                 indexWriter.close();
             } catch (IOException ex) {
                 log.error(ex.getMessage(), ex);
             }
         }
     }
+
+    /**
+     * Used by everything which buffers documents or keeps track of indexing progress.
+     *
+     * @see #checkpoint()
+     */
+    public interface CheckpointListener {
+
+        /**
+         * Take the progress which should be persisted after this commit.
+         */
+        default void drain() {}
+
+        /**
+         * Add all buffered documents to the IndexWriter.
+         */
+        default void flush() {}
+
+        /**
+         * Persist the drained progress, the index has been committed.
+         */
+        default void committed() {}
+    }
 }
@@ -0,0 +1,183 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.model;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Query;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author Marten4n6
+ *         Query parser which turns queries on the typed fields (see NumericFields) into point queries:
+ *         received:[2016-01-01 TO 2016-03-31], sent:>=2016-02, received:2016-01-15, size:>10MB, size:[1KB TO 2MB].
+ *         Dates are a year, month or day in the local time zone and cover the whole period.
+ */
+public class KmeelQueryParser extends MultiFieldQueryParser {
+
+    private static final Pattern COMPARISON = Pattern.compile("^(>=|<=|>|<)(.+)$");
+    private static final Pattern SIZE = Pattern.compile("^(\\d+(?:\\.\\d+)?)\\s*([KMGT]?I?B?)$");
+
+    public KmeelQueryParser(String[] fields, Analyzer analyzer, Map<String, Float> boosts) {
+        super(fields, analyzer, boosts);
+    }
+
+    @Override
+    protected Query getFieldQuery(String field, String queryText, boolean quoted) throws ParseException {
+        if (field == null || !NumericFields.isNumeric(field)) {
+            return super.getFieldQuery(field, queryText, quoted);
+        }
+        Matcher comparison = COMPARISON.matcher(queryText.trim());
+
+        if (!comparison.matches()) {
+            // A single date is the whole year, month or day, a single size is exact
+            return LongPoint.newRangeQuery(field, getLowerBound(field, queryText), getUpperBound(field, queryText));
+        }
+
+        String value = comparison.group(2);
+
+        switch (comparison.group(1)) {
+            case ">":
+                return LongPoint.newRangeQuery(field, add(getUpperBound(field, value), 1), Long.MAX_VALUE);
+            case ">=":
+                return LongPoint.newRangeQuery(field, getLowerBound(field, value), Long.MAX_VALUE);
+            case "<":
+                return LongPoint.newRangeQuery(field, Long.MIN_VALUE, add(getLowerBound(field, value), -1));
+            default:
+                return LongPoint.newRangeQuery(field, Long.MIN_VALUE, getUpperBound(field, value));
+        }
+    }
+
+    @Override
+    protected Query getRangeQuery(String field, String part1, String part2, boolean startInclusive, boolean endInclusive) throws ParseException {
+        if (field == null || !NumericFields.isNumeric(field)) {
+            return super.getRangeQuery(field, part1, part2, startInclusive, endInclusive);
+        }
+        long lowerBound = Long.MIN_VALUE;
+        long upperBound = Long.MAX_VALUE;
+
+        if (part1 != null && !part1.equals("*")) {
+            lowerBound = startInclusive ? getLowerBound(field, part1) : add(getUpperBound(field, part1), 1);
+        }
+        if (part2 != null && !part2.equals("*")) {
+            upperBound = endInclusive ? getUpperBound(field, part2) : add(getLowerBound(field, part2), -1);
+        }
+        return LongPoint.newRangeQuery(field, lowerBound, upperBound);
+    }
+
+    /**
+     * @return The bound moved by the amount, used for exclusive bounds.
+     */
+    private static long add(long bound, long amount) throws ParseException {
+        try {
+            return Math.addExact(bound, amount);
+        } catch (ArithmeticException ex) {
+            throw new ParseException("The value " + bound + " is out of range.");
+        }
+    }
+
+    /**
+     * @return The first millisecond of the date or the size in bytes.
+     */
+    private long getLowerBound(String field, String value) throws ParseException {
+        return NumericFields.isDate(field) ? getDateBounds(value)[0] : getSize(value);
+    }
+
+    /**
+     * @return The last millisecond of the date or the size in bytes.
+     */
+    private long getUpperBound(String field, String value) throws ParseException {
+        return NumericFields.isDate(field) ? getDateBounds(value)[1] : getSize(value);
+    }
+
+    /**
+     * @return The first and last millisecond of the year (yyyy), month (yyyy-MM) or day (yyyy-MM-dd).
+     */
+    private long[] getDateBounds(String value) throws ParseException {
+        ZoneId zone = ZoneId.systemDefault();
+        String date = value.trim();
+
+        try {
+            LocalDate start;
+            LocalDate end;
+
+            if (date.matches("\\d{4}")) {
+                start = LocalDate.of(Integer.parseInt(date), 1, 1);
+                end = start.plusYears(1);
+            } else if (date.matches("\\d{4}-\\d{2}")) {
+                start = YearMonth.parse(date).atDay(1);
+                end = start.plusMonths(1);
+            } else {
+                start = LocalDate.parse(date);
+                end = start.plusDays(1);
+            }
+            return new long[]{
+                    start.atStartOfDay(zone).toInstant().toEpochMilli(),
+                    end.atStartOfDay(zone).toInstant().toEpochMilli() - 1
+            };
+        } catch (DateTimeParseException ex) {
+            throw new ParseException("Invalid date \"" + value + "\", use yyyy, yyyy-MM or yyyy-MM-dd.");
+        }
+    }
+
+    /**
+     * @return The size in bytes of a size like 512, 10KB or 1.5MB.
+     */
+    private long getSize(String value) throws ParseException {
+        Matcher matcher = SIZE.matcher(value.trim().toUpperCase(Locale.ROOT));
+
+        if (!matcher.matches()) {
+            throw new ParseException("Invalid size \"" + value + "\", use for example 512, 10KB or 1.5MB.");
+        }
+
+        double size = Double.parseDouble(matcher.group(1));
+        String unit = matcher.group(2).isEmpty() ? "B" : matcher.group(2);
+
+        switch (unit.charAt(0)) {
+            case 'K':
+                size *= 1024;
+                break;
+            case 'M':
+                size *= 1024 * 1024;
+                break;
+            case 'G':
+                size *= 1024 * 1024 * 1024;
+                break;
+            case 'T':
+                size *= 1024L * 1024 * 1024 * 1024;
+                break;
+        }
+
+        // Larger sizes would be cut off at the largest long
+        if (size >= Long.MAX_VALUE) {
+            throw new ParseException("The size \"" + value + "\" is too large.");
+        }
+        return (long) size;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.model;
+
+import com.github.kmeel.api.model.objects.ID;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * @author Marten4n6
+ *         Least recently used cache of values by message (or attachment) ID, limited by the
+ *         approximate amount of memory of the values instead of the amount of values.
+ *         One cache is shared by all tabs of a case, so switching between them doesn't decode a message again.
+ */
+@Slf4j
+public class MessageCache<V> {
+
+    private final String name;
+    private final long maxBytes;
+    private final ToLongFunction<V> weigher;
+
+    // Access ordered, the first entry is the least recently used
+    private final LinkedHashMap<ID, V> valueFromID = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxBytes The memory budget, values larger than this aren't cached.
+     * @param weigher  The approximate memory used by a value in bytes.
+     */
+    public MessageCache(String name, long maxBytes, ToLongFunction<V> weigher) {
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Loads the value on a miss, the loader isn't called while holding the lock
+     * so a slow load doesn't block other lookups.
+     *
+     * @return The cached or loaded value, null if the loader returned null (which isn't cached).
+     */
+    public V get(ID id, Function<ID, V> loader) {
+        V value = getIfPresent(id);
+
+        if (value == null) {
+            value = loader.apply(id);
+
+            if (value != null) put(id, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return The cached value, null on a miss.
+     */
+    public synchronized V getIfPresent(ID id) {
+        V value = valueFromID.get(id);
+
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    public synchronized void put(ID id, V value) {
+        long weight = weigher.applyAsLong(value);
+
+        if (weight > maxBytes) return;
+
+        V previousValue = valueFromID.put(id, value);
+
+        if (previousValue != null) bytes -= weigher.applyAsLong(previousValue);
+        bytes += weight;
+
+        Iterator<Map.Entry<ID, V>> iterator = valueFromID.entrySet().iterator();
+
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<ID, V> eldest = iterator.next();
+
+            bytes -= weigher.applyAsLong(eldest.getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void invalidate(ID id) {
+        V value = valueFromID.remove(id);
+
+        if (value != null) bytes -= weigher.applyAsLong(value);
+    }
+
+    public synchronized void clear() {
+        valueFromID.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return The approximate memory used by the cached values.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getSize() {
+        return valueFromID.size();
+    }
+
+    /**
+     * @return The fraction of lookups which were hits.
+     */
+    public synchronized double getHitRatio() {
+        return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: %d values, %d/%d KB, %d hits, %d misses (%.0f%% hits), %d evictions",
+                name, valueFromID.size(), bytes / 1024, maxBytes / 1024, hits, misses, getHitRatio() * 100, evictions);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.model;
+
+import com.github.kmeel.api.KmeelAPI;
+import com.github.kmeel.api.model.objects.ID;
+import com.github.kmeel.api.model.objects.Message;
+import com.github.kmeel.api.model.objects.MessageRow;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.IndexSearcher;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * @author Marten4n6
+ *         Builds message table rows from the columns stored in the index,
+ *         so the source (PST, EML) is only opened once a message itself is viewed.
+ *         Bookmarks and tags are read once when this is created, use a new instance for every batch of rows.
+ */
+@Slf4j
+public class MessageRows {
+
+    // Stored only (not searchable), see add
+    public static final String FROM = "RowFrom";
+    public static final String TO = "RowTo";
+    public static final String CC = "RowCC";
+    public static final String SUBJECT = "RowSubject";
+    public static final String SIZE = "RowSize";
+    public static final String RECEIVED = "RowReceived";
+
+    private final KmeelAPI kmeelAPI;
+    private final Set<ID> bookmarks;
+    private final Map<ID, String> tags;
+
+    public MessageRows(KmeelAPI kmeelAPI) {
+        this.kmeelAPI = kmeelAPI;
+
+        bookmarks = new HashSet<>(kmeelAPI.bookmarks().get());
+        tags = kmeelAPI.tags().getAll();
+    }
+
+    /**
+     * Stores the columns of the message table in the document, null values are stored as empty.
+     *
+     * @param size     The size in bytes, negative if unknown.
+     * @param received The date shown in the received column, may be null.
+     */
+    public static void add(Document document, String from, String to, String cc, String subject, long size, Date received) {
+        document.add(new StoredField(FROM, from != null ? from : ""));
+        document.add(new StoredField(TO, to != null ? to : ""));
+        document.add(new StoredField(CC, cc != null ? cc : ""));
+        document.add(new StoredField(SUBJECT, subject != null ? subject : ""));
+        if (size >= 0) {
+            document.add(new StoredField(SIZE, size));
+        }
+        if (received != null) {
+            document.add(new StoredField(RECEIVED, received.getTime()));
+        }
+    }
+
+    /**
+     * Documents indexed before the columns were stored get their row from the parser.
+     *
+     * @return The row of the document, null if the message can't be found.
+     */
+    public MessageRow getRow(Document document) {
+        ID id = new ID(document.get("ID"));
+
+        if (document.get(SUBJECT) == null) {
+            Message message = kmeelAPI.messages().getMessage(id);
+            return message != null ? message.getRow() : null;
+        }
+
+        IndexableField size = document.getField(SIZE);
+        IndexableField received = document.getField(RECEIVED);
+
+        return new MessageRow(
+                kmeelAPI,
+                id,
+                document.get(FROM),
+                document.get(TO),
+                size != null ? humanReadableByteCount(size.numericValue().longValue()) : "",
+                document.get(SUBJECT),
+                document.get(CC),
+                new SimpleObjectProperty<>(received != null ? new Date(received.numericValue().longValue()) : null),
+                new SimpleStringProperty(tags.getOrDefault(id, "")),
+                new SimpleBooleanProperty(bookmarks.contains(id))
+        );
+    }
+
+    /**
+     * @return The rows of the IDs (in the same order), IDs which can't be found are skipped.
+     */
+    public List<MessageRow> getRows(Collection<ID> ids) {
+        List<MessageRow> rows = new ArrayList<>(ids.size());
+        IndexSearcher indexSearcher = kmeelAPI.searcher().acquire();
+
+        try {
+            for (ID id : ids) {
+                MessageRow row = null;
+
+                int docID = kmeelAPI.searcher().lookup().getDocID(indexSearcher, id);
+
+                if (docID != -1) {
+                    row = getRow(indexSearcher.doc(docID));
+                }
+                if (row == null) {
+                    Message message = kmeelAPI.messages().getMessage(id);
+                    if (message != null) row = message.getRow();
+                }
+                if (row != null) rows.add(row);
+            }
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+        } finally {
+            kmeelAPI.searcher().release(indexSearcher);
+        }
+        return rows;
+    }
+
+    /**
+     * @param docIDs Document IDs in the searcher, for example from {@link DocumentLookup#getDocIDs}.
+     * @return The rows of the documents (in the same order).
+     */
+    public List<MessageRow> getRows(IndexSearcher indexSearcher, int[] docIDs) {
+        List<MessageRow> rows = new ArrayList<>(docIDs.length);
+
+        try {
+            for (int docID : docIDs) {
+                MessageRow row = getRow(indexSearcher.doc(docID));
+
+                if (row != null) rows.add(row);
+            }
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+        }
+        return rows;
+    }
+
+    private static String humanReadableByteCount(long bytes) {
+        int unit = 1024;
+        if (bytes < unit) return bytes + " B";
+        int exp = (int) (Math.log(bytes) / Math.log(unit));
+        String pre = "KMGTPE".charAt(exp - 1) + "i";
+        return String.format("%.1f %sB", bytes / Math.pow(unit, exp), pre);
+    }
+}
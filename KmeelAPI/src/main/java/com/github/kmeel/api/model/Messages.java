@@ -19,11 +19,10 @@
 package com.github.kmeel.api.model;
 
 import com.github.kmeel.api.model.objects.Message;
-import com.github.kmeel.api.spi.Parser;
+import com.github.kmeel.api.spi.BatchParser;
 import com.github.kmeel.api.model.objects.ID;
 
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 /**
@@ -38,9 +37,7 @@ public class Messages {
     }
 
     public Message getMessage(ID id) {
-        List<Parser> parsers = plugins.getPluginManager().getExtensions(Parser.class);
-
-        for (Parser parser : parsers) {
+        for (BatchParser parser : plugins.getParsers()) {
             Message message = parser.getMessage(id);
 
             if (message != null) return message;
@@ -51,7 +48,7 @@ public class Messages {
     public Set<String> getSupportedFileExtensions() {
         Set<String> extensions = new HashSet<>();
 
-        for (Parser parser : plugins.getPluginManager().getExtensions(Parser.class)) {
+        for (BatchParser parser : plugins.getParsers()) {
             parser.getAcceptedExtensions().forEach(extensions::add);
         }
         return extensions;
@@ -0,0 +1,70 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.model;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+
+import java.util.Date;
+
+/**
+ * @author Marten4n6
+ *         Typed fields every parser should index, these can be searched
+ *         with ranges (received:[2016-01-01 TO 2016-03-31], size:>10MB) and sorted on.
+ */
+public class NumericFields {
+
+    // Milliseconds since the epoch
+    public static final String RECEIVED = "received";
+    public static final String SENT = "sent";
+
+    // Bytes
+    public static final String SIZE = "size";
+
+    private NumericFields() {}
+
+    /**
+     * Adds the date as a point (for ranges) and doc value (for sorting), does nothing if the date is null.
+     */
+    public static void addDate(Document document, String name, Date date) {
+        if (date != null) {
+            addLong(document, name, date.getTime());
+        }
+    }
+
+    /**
+     * Adds the value as a point (for ranges) and doc value (for sorting).
+     */
+    public static void addLong(Document document, String name, long value) {
+        document.add(new LongPoint(name, value));
+        document.add(new NumericDocValuesField(name, value));
+    }
+
+    /**
+     * @return True if the field is one of the typed fields.
+     */
+    public static boolean isNumeric(String name) {
+        return RECEIVED.equals(name) || SENT.equals(name) || SIZE.equals(name);
+    }
+
+    public static boolean isDate(String name) {
+        return RECEIVED.equals(name) || SENT.equals(name);
+    }
+}
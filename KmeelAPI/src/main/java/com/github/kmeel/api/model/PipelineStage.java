@@ -0,0 +1,173 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.model;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Marten4n6
+ *         A stage of an ingest pipeline (for example read, body extraction, document building and index writing).
+ *         Items are processed by a fixed amount of threads and passed to the next stage,
+ *         submit blocks while too many items are waiting so memory stays bounded.
+ */
+@Slf4j
+public class PipelineStage<I, O> {
+
+    private final String name;
+    private final Step<I, O> step;
+    private final PipelineStage<O, ?> next;
+
+    private final ExecutorService workers;
+    private final Semaphore waitingItems;
+
+    /**
+     * @param threads   The amount of items processed at the same time.
+     * @param queueSize The amount of items which may wait for a thread.
+     * @param next      The stage the results are passed to, null for the last stage.
+     */
+    public PipelineStage(String name, int threads, int queueSize, Step<I, O> step, PipelineStage<O, ?> next) {
+        this.name = name;
+        this.step = step;
+        this.next = next;
+
+        AtomicInteger threadNumber = new AtomicInteger(0);
+
+        workers = Executors.newFixedThreadPool(Math.max(1, threads), (runnable) -> {
+            Thread thread = new Thread(runnable, name + " " + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        waitingItems = new Semaphore(Math.max(1, queueSize) + Math.max(1, threads));
+    }
+
+    /**
+     * Queues the item, blocks while the queue of this stage is full.
+     *
+     * @param onFinished Called once the item left the last stage, failed or was dropped (may be null).
+     */
+    public void submit(I item, Runnable onFinished) throws InterruptedException {
+        submit(item, onFinished, null);
+    }
+
+    /**
+     * Queues the item, blocks while the queue of this stage is full.
+     *
+     * @param onFinished Called once the item left the last stage, failed or was dropped (may be null).
+     * @param onFailed   Called before onFinished if a stage failed to process the item (may be null).
+     */
+    public void submit(I item, Runnable onFinished, Runnable onFailed) throws InterruptedException {
+        waitingItems.acquire();
+
+        try {
+            workers.execute(() -> process(item, onFinished, onFailed));
+        } catch (RejectedExecutionException ex) {
+            waitingItems.release();
+            log.error(name + " is shut down, dropped an item.");
+            finish(true, onFinished, onFailed);
+        }
+    }
+
+    private void process(I item, Runnable onFinished, Runnable onFailed) {
+        boolean isPassedOn = false;
+        boolean isFailed = true;
+
+        try {
+            O result = step.process(item);
+
+            if (result != null && next != null) {
+                // Blocks while the next stage is full, which slows down this stage
+                next.submit(result, onFinished, onFailed);
+                isPassedOn = true;
+            }
+            isFailed = false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            log.error(name + ": " + ex.getMessage(), ex);
+        } finally {
+            waitingItems.release();
+
+            if (!isPassedOn) finish(isFailed, onFinished, onFailed);
+        }
+    }
+
+    private void finish(boolean isFailed, Runnable onFinished, Runnable onFailed) {
+        if (isFailed && onFailed != null) onFailed.run();
+        if (onFinished != null) onFinished.run();
+    }
+
+    /**
+     * Waits until all queued items are processed and stops this and the following stages.
+     */
+    public void shutdown() {
+        workers.shutdown();
+
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (next != null) next.shutdown();
+    }
+
+    /**
+     * The work of a stage, returning null drops the item.
+     */
+    @FunctionalInterface
+    public interface Step<I, O> {
+        O process(I item) throws Exception;
+    }
+
+    /**
+     * Runs the listener once every added item is finished and close has been called,
+     * used to know when everything of a file (or a part of it) has left the pipeline.
+     */
+    public static class Tracker {
+
+        private final AtomicInteger pendingItems = new AtomicInteger(1);
+        private final Runnable onFinished;
+
+        public Tracker(Runnable onFinished) {
+            this.onFinished = onFinished;
+        }
+
+        /**
+         * @return The callback which should be called once the added item is finished.
+         */
+        public Runnable add() {
+            pendingItems.incrementAndGet();
+            return this::finishItem;
+        }
+
+        /**
+         * Should be called once all items are added.
+         */
+        public void close() {
+            finishItem();
+        }
+
+        private void finishItem() {
+            if (pendingItems.decrementAndGet() == 0) onFinished.run();
+        }
+    }
+}
@@ -21,13 +21,15 @@ package com.github.kmeel.api.model;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import com.github.kmeel.api.spi.BatchParser;
+import com.github.kmeel.api.spi.LegacyParserAdapter;
+import com.github.kmeel.api.spi.Parser;
 import com.github.kmeel.api.utils.OSUtils;
 import ro.fortsoft.pf4j.DefaultPluginManager;
 import ro.fortsoft.pf4j.PluginManager;
 
 import java.io.File;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
 /**
  * @author Marten4n6
@@ -36,6 +38,7 @@ import java.util.Set;
 public class Plugins {
 
     private PluginManager pluginManager;
+    private final Map<Parser, LegacyParserAdapter> adapterFromParser = new HashMap<>();
     private static @Getter Set<String> pluginsDisabledByDefault = new HashSet<>();
 
     public Plugins() {
@@ -58,6 +61,18 @@ public class Plugins {
         return pluginManager;
     }
 
+    /**
+     * @return All BatchParser extensions, including adapted Parser extensions.
+     */
+    public synchronized List<BatchParser> getParsers() {
+        List<BatchParser> parsers = new ArrayList<>(pluginManager.getExtensions(BatchParser.class));
+
+        for (Parser parser : pluginManager.getExtensions(Parser.class)) {
+            parsers.add(adapterFromParser.computeIfAbsent(parser, LegacyParserAdapter::new));
+        }
+        return parsers;
+    }
+
     /**
      * Disables the plugin by default.
      *
@@ -0,0 +1,104 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.model;
+
+import lombok.Getter;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * @author Marten4n6
+ *         Pages through the hits of a query (best hits first) without collecting all of them at once.
+ *         The searcher is acquired until close is called, so document IDs of every page stay valid
+ *         while the index is refreshed.
+ */
+public class SearchCursor implements Closeable {
+
+    private final Searcher searcher;
+    private final IndexSearcher indexSearcher;
+    private final Query query;
+    private final int pageSize;
+    private final long maxHits;
+
+    private ScoreDoc lastHit;
+    private long returnedHits;
+    private @Getter long totalHits = -1;
+    private boolean isClosed;
+
+    /**
+     * @param maxHits The maximum amount of hits returned by all pages together, 0 for no limit.
+     */
+    SearchCursor(Searcher searcher, IndexSearcher indexSearcher, Query query, int pageSize, long maxHits) {
+        this.searcher = searcher;
+        this.indexSearcher = indexSearcher;
+        this.query = query;
+        this.pageSize = Math.max(1, pageSize);
+        this.maxHits = maxHits <= 0 ? Long.MAX_VALUE : maxHits;
+    }
+
+    /**
+     * @return The next hits, an empty array once all hits are returned.
+     */
+    public synchronized ScoreDoc[] nextPage() throws IOException {
+        if (!hasNext()) return new ScoreDoc[0];
+
+        int hits = (int) Math.min(pageSize, maxHits - returnedHits);
+        TopDocs topDocs = lastHit == null ? indexSearcher.search(query, hits) : indexSearcher.searchAfter(lastHit, query, hits);
+
+        totalHits = topDocs.totalHits;
+        returnedHits += topDocs.scoreDocs.length;
+
+        if (topDocs.scoreDocs.length > 0) {
+            lastHit = topDocs.scoreDocs[topDocs.scoreDocs.length - 1];
+        }
+        return topDocs.scoreDocs;
+    }
+
+    /**
+     * @return True if there may be more hits.
+     */
+    public synchronized boolean hasNext() {
+        return !isClosed && returnedHits < maxHits && (totalHits == -1 || returnedHits < totalHits);
+    }
+
+    /**
+     * @return The document of a hit returned by this cursor, the cursor shouldn't be closed yet.
+     */
+    public Document getDocument(ScoreDoc hit) throws IOException {
+        return indexSearcher.doc(hit.doc);
+    }
+
+    /**
+     * Releases the searcher, this should always be called.
+     */
+    @Override
+    public synchronized void close() {
+        if (!isClosed) {
+            isClosed = true;
+            searcher.release(indexSearcher);
+            searcher.cursorClosed(this);
+        }
+    }
+}
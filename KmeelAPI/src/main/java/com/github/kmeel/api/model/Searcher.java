@@ -18,11 +18,13 @@
 
 package com.github.kmeel.api.model;
 
+import com.github.kmeel.api.KmeelAPI;
 import com.github.kmeel.api.utils.OSUtils;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
@@ -31,49 +33,249 @@ import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * @author Marten4n6
- *         This class handles searching for indexed messages
+ *         This class handles searching for indexed messages.
+ *         While the case is being indexed the searcher is refreshed from the
+ *         IndexWriter every few seconds, so new messages can be searched before the ingest finishes.
  */
 @Slf4j
 public class Searcher {
 
-    private static IndexSearcher searcher;
-    private static QueryParser parser;
+    // Fields which are searched by default get a boost of 1 unless specified here
+    private static final Map<String, Float> BOOSTS;
+
+    static {
+        Map<String, Float> boosts = new HashMap<>();
+        boosts.put("Subject", 3f);
+        boosts.put("From", 2f);
+        boosts.put("Attendees", 2f);
+        boosts.put("AttachmentName", 2f);
+
+        BOOSTS = Collections.unmodifiableMap(boosts);
+    }
+
+    private final String caseName;
+    private final Indexer indexer;
+
+    private volatile SearcherManager searcherManager;
+    private volatile boolean isNearRealTime;
+    private volatile boolean isClosed;
+
+    // Replaced (never changed) after a refresh, a QueryParser isn't thread-safe so one is created per query
+    private volatile String[] defaultFields = {"Contents"};
+
+    private ScheduledExecutorService refreshService;
+
+    // Searches the segments of a query in parallel, shared by all searchers of this case
+    private ExecutorService searchService;
+    private SearcherFactory searcherFactory;
+
+    private final DocumentLookup documentLookup = new DocumentLookup(this);
+
+    // Cursors pin their searcher until they're closed, so they are closed together with this searcher
+    private final Set<SearchCursor> openCursors = ConcurrentHashMap.newKeySet();
+
+    // Called when a query can't be parsed or searched, shows an alert if not set
+    private @Setter Consumer<Exception> errorListener;
+
+    /**
+     * @param refreshSeconds How often new documents of the IndexWriter become searchable.
+     * @param searchThreads  The amount of segments searched at the same time, 1 searches on the calling thread.
+     */
+    public Searcher(String caseName, Indexer indexer, int refreshSeconds, int searchThreads) {
+        this.caseName = caseName;
+        this.indexer = indexer;
+
+        if (searchThreads > 1) {
+            AtomicInteger threadNumber = new AtomicInteger(0);
+
+            searchService = Executors.newFixedThreadPool(searchThreads, (runnable) -> {
+                Thread thread = new Thread(runnable, "Search " + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            searcherFactory = new SearcherFactory() {
+                @Override
+                public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+                    return new IndexSearcher(reader, searchService);
+                }
+            };
+        } else {
+            searcherFactory = new SearcherFactory();
+        }
+
+        getSearcherManager();
+
+        refreshService = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "Search refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refreshService.scheduleWithFixedDelay(this::refresh, refreshSeconds, Math.max(1, refreshSeconds), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Uses the IndexWriter if it's open (near-real-time), otherwise the last commit of the index.
+     * Switches to the IndexWriter once it's opened by an ingest.
+     *
+     * @return The SearcherManager, null if the index couldn't be opened.
+     */
+    private SearcherManager getSearcherManager() {
+        SearcherManager currentSearcherManager = searcherManager;
+
+        // Queries don't wait on each other unless the manager has to be (re)opened
+        if (currentSearcherManager != null && (isNearRealTime || !indexer.isOpen())) {
+            return currentSearcherManager;
+        }
+        return openSearcherManager();
+    }
+
+    private synchronized SearcherManager openSearcherManager() {
+        if (isClosed) return null;
+
+        boolean isIndexerOpen = indexer.isOpen();
+
+        if (searcherManager == null || (isIndexerOpen && !isNearRealTime)) {
+            try {
+                SearcherManager newSearcherManager;
+
+                if (isIndexerOpen) {
+                    newSearcherManager = new SearcherManager(indexer.getIndexWriter(), true, false, searcherFactory);
+                } else {
+                    Directory directory = FSDirectory.open(new File(OSUtils.getIndexPath(caseName)).toPath());
+
+                    // Nothing has been committed yet
+                    if (!DirectoryReader.indexExists(directory)) return null;
+
+                    newSearcherManager = new SearcherManager(directory, searcherFactory);
+                }
+                newSearcherManager.addListener(new ReferenceManager.RefreshListener() {
+                    @Override
+                    public void beforeRefresh() {}
+
+                    @Override
+                    public void afterRefresh(boolean didRefresh) {
+                        // New fields may have been indexed
+                        if (didRefresh) updateDefaultFields(newSearcherManager);
+                    }
+                });
+
+                SearcherManager oldSearcherManager = searcherManager;
+
+                updateDefaultFields(newSearcherManager);
+                isNearRealTime = isIndexerOpen;
+                searcherManager = newSearcherManager;
+
+                // Searchers acquired from the old manager stay usable until released
+                if (oldSearcherManager != null) oldSearcherManager.close();
+            } catch (IOException ex) {
+                log.error(ex.getMessage(), ex);
+            }
+        }
+        return searcherManager;
+    }
+
+    /**
+     * Makes the documents which were added since the last refresh searchable.
+     */
+    public void refresh() {
+        SearcherManager manager = getSearcherManager();
+
+        try {
+            if (manager != null) manager.maybeRefresh();
+        } catch (AlreadyClosedException ex) {
+            // The IndexWriter has been closed, reopen from the last commit
+            synchronized (this) {
+                if (searcherManager == manager) {
+                    isNearRealTime = false;
+                    closeSearcherManager();
+                }
+            }
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * The returned searcher doesn't change while it's acquired, use it when
+     * document IDs of a search are used afterwards. Every acquire must be released.
+     *
+     * @return The current searcher, null if the index couldn't be opened.
+     */
+    public IndexSearcher acquire() {
+        SearcherManager manager = getSearcherManager();
+
+        try {
+            return manager != null ? manager.acquire() : null;
+        } catch (AlreadyClosedException ex) {
+            // Replaced by a near-real-time searcher in the meantime
+            return acquire();
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Releases a searcher returned by acquire.
+     */
+    public void release(IndexSearcher indexSearcher) {
+        if (indexSearcher == null) return;
 
-    public Searcher(String caseName) {
         try {
-            searcher = new IndexSearcher(DirectoryReader.open(FSDirectory.open(
-                       new File(OSUtils.getIndexPath(caseName)).toPath())));
-            parser = new QueryParser("Contents", new StandardAnalyzer());
-            parser.setLowercaseExpandedTerms(true);
+            // Released to the manager which created it, which may have been replaced
+            indexSearcher.getIndexReader().decRef();
         } catch (IOException ex) {
             log.error(ex.getMessage(), ex);
         }
     }
 
     public TopDocs search(String queryString, int maxHits) {
+        IndexSearcher indexSearcher = acquire();
+
+        try {
+            return search(indexSearcher, queryString, maxHits);
+        } finally {
+            release(indexSearcher);
+        }
+    }
+
+    public TopDocs search(IndexSearcher indexSearcher, String queryString, int maxHits) {
         try {
-            return searcher.search(parser.parse(queryString), maxHits);
+            return indexSearcher.search(createParser().parse(queryString), maxHits);
         } catch (ParseException | NullPointerException | IOException ex) {
             log.error(ex.getMessage());
 
-            Platform.runLater(() -> {
-                Alert alert = new Alert(Alert.AlertType.ERROR, "", ButtonType.CLOSE);
-                Label message = new Label(ex.getMessage());
-                message.setWrapText(true);
-
-                alert.getDialogPane().setContent(message);
-                alert.showAndWait();
-            });
+            if (errorListener != null) {
+                errorListener.accept(ex);
+            } else if (!KmeelAPI.isHeadless()) {
+                showErrorAlert(ex);
+            }
             return null;
         } catch (IllegalStateException ex) {
             log.error(ex.getMessage(), ex);
@@ -81,17 +283,134 @@ public class Searcher {
         }
     }
 
+    /**
+     * Opens a cursor which returns the hits page by page, the cursor must be closed.
+     *
+     * @param maxHits The maximum amount of hits, 0 for no limit.
+     * @return The cursor, null if the query couldn't be parsed or the index couldn't be opened.
+     */
+    public SearchCursor openCursor(String queryString, int pageSize, long maxHits) {
+        try {
+            return openCursor(createParser().parse(queryString), pageSize, maxHits);
+        } catch (ParseException ex) {
+            log.error(ex.getMessage());
+
+            if (errorListener != null) {
+                errorListener.accept(ex);
+            } else if (!KmeelAPI.isHeadless()) {
+                showErrorAlert(ex);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @see #openCursor(String, int, long)
+     */
+    public SearchCursor openCursor(Query query, int pageSize, long maxHits) {
+        IndexSearcher indexSearcher = acquire();
+
+        if (indexSearcher == null) return null;
+
+        SearchCursor cursor = new SearchCursor(this, indexSearcher, query, pageSize, maxHits);
+        openCursors.add(cursor);
+        return cursor;
+    }
+
+    private void showErrorAlert(Exception ex) {
+        Platform.runLater(() -> {
+            Alert alert = new Alert(Alert.AlertType.ERROR, "", ButtonType.CLOSE);
+            Label message = new Label(ex.getMessage());
+            message.setWrapText(true);
+
+            alert.getDialogPane().setContent(message);
+            alert.showAndWait();
+        });
+    }
+
     public TopDocs search(Query query, int maxHits) {
+        IndexSearcher indexSearcher = acquire();
+
         try {
-            return searcher.search(query, maxHits);
-        } catch (IOException ex) {
+            return search(indexSearcher, query, maxHits);
+        } finally {
+            release(indexSearcher);
+        }
+    }
+
+    public TopDocs search(IndexSearcher indexSearcher, Query query, int maxHits) {
+        try {
+            return indexSearcher.search(query, maxHits);
+        } catch (IOException | NullPointerException ex) {
             log.error(ex.getMessage(), ex);
             return null;
         }
     }
 
+    /**
+     * @deprecated Document IDs are only valid for the searcher which found them and the
+     * searcher is refreshed while indexing, use acquire and IndexSearcher#doc instead.
+     */
+    @Deprecated
     public Document getDocument(int id) throws IOException {
-        return searcher.doc(id);
+        IndexSearcher indexSearcher = acquire();
+
+        try {
+            return indexSearcher.doc(id);
+        } finally {
+            release(indexSearcher);
+        }
+    }
+
+    /**
+     * @return A new parser, parsers aren't thread-safe and are cheap to create.
+     */
+    private QueryParser createParser() {
+        QueryParser parser = new KmeelQueryParser(defaultFields, new StandardAnalyzer(), BOOSTS);
+        parser.setLowercaseExpandedTerms(true);
+        return parser;
+    }
+
+    private void updateDefaultFields(SearcherManager manager) {
+        try {
+            IndexSearcher indexSearcher = manager.acquire();
+
+            try {
+                defaultFields = getDefaultFields(indexSearcher);
+            } finally {
+                manager.release(indexSearcher);
+            }
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Text fields (indexed with positions) are searched when a query doesn't specify a field.
+     * This includes the Contents field of indexes created before it was removed.
+     *
+     * @return The fields which are searched by default.
+     */
+    private static String[] getDefaultFields(IndexSearcher indexSearcher) {
+        Set<String> fields = new HashSet<>();
+
+        for (LeafReaderContext leafReaderContext : indexSearcher.getIndexReader().leaves()) {
+            for (FieldInfo fieldInfo : leafReaderContext.reader().getFieldInfos()) {
+                if (fieldInfo.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS) >= 0) {
+                    fields.add(fieldInfo.name);
+                }
+            }
+        }
+
+        if (fields.isEmpty()) fields.add("Contents");
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * @return The lookup of documents by ID, shared by everything which uses this case.
+     */
+    public DocumentLookup lookup() {
+        return documentLookup;
     }
 
     /**
@@ -99,12 +418,50 @@ public class Searcher {
      */
     public Set<String> getIndexedFields() {
         Set<String> fields = new HashSet<>();
+        IndexSearcher indexSearcher = acquire();
 
-        for (LeafReaderContext leafReaderContext : searcher.getIndexReader().leaves()) {
-            for (FieldInfo fieldInfo : leafReaderContext.reader().getFieldInfos()) {
-                fields.add(fieldInfo.name);
+        if (indexSearcher == null) return fields;
+
+        try {
+            for (LeafReaderContext leafReaderContext : indexSearcher.getIndexReader().leaves()) {
+                for (FieldInfo fieldInfo : leafReaderContext.reader().getFieldInfos()) {
+                    fields.add(fieldInfo.name);
+                }
             }
+        } finally {
+            release(indexSearcher);
         }
         return fields;
     }
-}
\ No newline at end of file
+
+    private synchronized void closeSearcherManager() {
+        if (searcherManager != null) {
+            try {
+                searcherManager.close();
+            } catch (IOException ex) {
+                log.error(ex.getMessage(), ex);
+            }
+            searcherManager = null;
+        }
+    }
+
+    /**
+     * Called by a cursor once it released its searcher.
+     */
+    void cursorClosed(SearchCursor cursor) {
+        openCursors.remove(cursor);
+    }
+
+    /**
+     * Stops refreshing, closes the open cursors and the index reader, acquired searchers stay usable until released.
+     */
+    public synchronized void close() {
+        isClosed = true;
+        refreshService.shutdown();
+        new ArrayList<>(openCursors).forEach(SearchCursor::close);
+        closeSearcherManager();
+
+        // Lets running searches finish
+        if (searchService != null) searchService.shutdown();
+    }
+}
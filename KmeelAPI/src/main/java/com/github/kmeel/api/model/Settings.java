@@ -77,4 +77,16 @@ public class Settings {
             return null;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @return The value of the key as a number, or the default value if it isn't set or invalid.
+     */
+    public int getInt(@NonNull String key, int defaultValue) {
+        try {
+            return get(key) != null ? Integer.parseInt(get(key)) : defaultValue;
+        } catch (NumberFormatException ex) {
+            log.warn("Invalid " + key + " setting, using " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.model;
+
+import com.github.kmeel.api.model.objects.SourceFingerprint;
+import com.github.kmeel.api.utils.OSUtils;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import lombok.Cleanup;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Marten4n6
+ *         This class keeps a fingerprint of every indexed source file,
+ *         so only new or changed sources are indexed again.
+ *         <p>
+ *         Parsers add a "Source" StringField (the file path) to every document,
+ *         which is used to remove the documents of changed or deleted sources.
+ *         Parsers which index a source in parts (see setPartIndexed) also add a
+ *         "SourceRange" StringField (see getSourceRange), so a restarted ingest continues
+ *         with the parts which weren't in the last checkpoint.
+ *         <p>
+ *         Checkpoints only append the changed fingerprints to a journal, which is
+ *         compacted into the fingerprints file once it's as large as the file itself.
+ */
+@Slf4j
+public class Sources implements Indexer.CheckpointListener {
+
+    private static Gson gson = new Gson();
+
+    // The journal is always allowed to grow this large before it's compacted
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+
+    private String caseName;
+    private Indexer indexer;
+    private Settings settings;
+
+    private final Map<String, SourceFingerprint> fingerprintFromPath = new ConcurrentHashMap<>();
+
+    // Progress which isn't in a commit yet, see Indexer#checkpoint
+    private final Object pendingLock = new Object();
+    private Set<String> pendingSources = new HashSet<>();
+    private Map<String, Set<String>> pendingParts = new HashMap<>();
+    private Set<String> drainedSources = new HashSet<>();
+    private Map<String, Set<String>> drainedParts = new HashMap<>();
+
+    public Sources(String caseName, Indexer indexer, Settings settings) {
+        this.caseName = caseName;
+        this.indexer = indexer;
+        this.settings = settings;
+
+        load();
+        indexer.addCheckpointListener(this);
+    }
+
+    /**
+     * Removes the documents of sources which changed, were deleted or weren't fully indexed.
+     * Stored sources which aren't passed in (because their parser is disabled) are kept as long as they exist.
+     * Should be called before parsing starts.
+     *
+     * @param currentSources Fingerprints (without hash) of the current source files which will be parsed.
+     * @return The amount of sources which need to be indexed.
+     */
+    public synchronized int update(Collection<SourceFingerprint> currentSources) {
+        boolean isHashing = Boolean.parseBoolean(settings.get("SourceHashing"));
+        IndexWriter indexWriter = indexer.getIndexWriter();
+        Set<String> currentPaths = new HashSet<>();
+        int sourcesToIndex = 0;
+        boolean hasDeleted = false;
+
+        try {
+            if (!OSUtils.getSourcesFile(caseName).exists() && indexWriter.numDocs() > 0) {
+                // Created before sources were tracked, there's no way to know which documents belong to which source
+                log.info("Index has no source fingerprints, indexing all sources again.");
+                indexWriter.deleteAll();
+                hasDeleted = true;
+            }
+
+            for (SourceFingerprint current : currentSources) {
+                SourceFingerprint stored = fingerprintFromPath.get(current.getPath());
+
+                currentPaths.add(current.getPath());
+                if (isHashing) current.setHash(getHash(current.getPath()));
+
+                if (stored != null && stored.matches(current)) {
+                    if (stored.getHash() == null) stored.setHash(current.getHash());
+
+                    if (stored.isIndexed()) continue;
+
+                    if (stored.getIndexedParts() != null && !stored.getIndexedParts().isEmpty()) {
+                        // Continue from the last checkpoint, only remove what was indexed after it
+                        indexWriter.deleteDocuments(getUnfinishedPartsQuery(stored));
+                        hasDeleted = true;
+                        sourcesToIndex++;
+                        continue;
+                    }
+                }
+
+                if (stored != null) {
+                    indexWriter.deleteDocuments(new Term("Source", current.getPath()));
+                    hasDeleted = true;
+                }
+
+                current.setIndexed(false);
+                fingerprintFromPath.put(current.getPath(), current);
+                sourcesToIndex++;
+            }
+
+            Iterator<SourceFingerprint> iterator = fingerprintFromPath.values().iterator();
+
+            while (iterator.hasNext()) {
+                SourceFingerprint stored = iterator.next();
+
+                // Sources of disabled parsers aren't passed in, their documents are kept until the file is deleted
+                if (!currentPaths.contains(stored.getPath()) && !new File(stored.getPath()).exists()) {
+                    indexWriter.deleteDocuments(new Term("Source", stored.getPath()));
+                    hasDeleted = true;
+                    iterator.remove();
+                }
+            }
+
+            // Removed or changed sources may only disappear from the fingerprints once their documents are gone
+            if (hasDeleted) indexWriter.commit();
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+            return sourcesToIndex;
+        }
+
+        log.info(sourcesToIndex + " of " + currentPaths.size() + " sources need to be indexed.");
+        save();
+        return sourcesToIndex;
+    }
+
+    /**
+     * @return True if the source is already (fully) indexed.
+     */
+    public boolean isIndexed(File source) {
+        SourceFingerprint fingerprint = fingerprintFromPath.get(source.getPath());
+
+        return fingerprint != null && fingerprint.isIndexed();
+    }
+
+    /**
+     * @return True if this part of the source was indexed before the last checkpoint.
+     */
+    public boolean isPartIndexed(File source, String part) {
+        SourceFingerprint fingerprint = fingerprintFromPath.get(source.getPath());
+
+        if (fingerprint == null) return false;
+
+        synchronized (fingerprint) {
+            return fingerprint.getIndexedParts() != null && fingerprint.getIndexedParts().contains(part);
+        }
+    }
+
+    /**
+     * Should be called by parsers once they're finished indexing the source,
+     * after all its documents have been handed to the IndexWriter (or a batch which is flushed on checkpoints).
+     * The source is stored as indexed after the next checkpoint.
+     */
+    public void setIndexed(File source) {
+        synchronized (pendingLock) {
+            pendingSources.add(source.getPath());
+        }
+    }
+
+    /**
+     * Should be called by parsers once they're finished indexing a part of the source.
+     * The documents of this part should have a "SourceRange" field with the value of getSourceRange.
+     */
+    public void setPartIndexed(File source, String part) {
+        synchronized (pendingLock) {
+            pendingParts.computeIfAbsent(source.getPath(), (path) -> new HashSet<>()).add(part);
+        }
+    }
+
+    /**
+     * @return The "SourceRange" value of documents in this part of the source.
+     */
+    public static String getSourceRange(File source, String part) {
+        return source.getPath() + "#" + part;
+    }
+
+    @Override
+    public void drain() {
+        synchronized (pendingLock) {
+            drainedSources = pendingSources;
+            drainedParts = pendingParts;
+            pendingSources = new HashSet<>();
+            pendingParts = new HashMap<>();
+        }
+    }
+
+    @Override
+    public void committed() {
+        Map<String, SourceFingerprint> changedFingerprints = new LinkedHashMap<>();
+
+        drainedParts.forEach((path, parts) -> {
+            SourceFingerprint fingerprint = getFingerprint(path);
+
+            synchronized (fingerprint) {
+                if (fingerprint.getIndexedParts() == null) fingerprint.setIndexedParts(new HashSet<>());
+                fingerprint.getIndexedParts().addAll(parts);
+            }
+            changedFingerprints.put(path, fingerprint);
+        });
+        drainedSources.forEach(path -> {
+            SourceFingerprint fingerprint = getFingerprint(path);
+
+            synchronized (fingerprint) {
+                fingerprint.setIndexed(true);
+                fingerprint.setIndexedParts(null);
+            }
+            changedFingerprints.put(path, fingerprint);
+        });
+
+        drainedSources = new HashSet<>();
+        drainedParts = new HashMap<>();
+        append(changedFingerprints.values());
+    }
+
+    private SourceFingerprint getFingerprint(String path) {
+        return fingerprintFromPath.computeIfAbsent(path, (key) -> {
+            File source = new File(key);
+            return new SourceFingerprint(key, source.length(), source.lastModified());
+        });
+    }
+
+    /**
+     * @return A query for all documents of the source which aren't in an indexed part.
+     */
+    private Query getUnfinishedPartsQuery(SourceFingerprint fingerprint) {
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        List<String> indexedParts = new ArrayList<>(fingerprint.getIndexedParts());
+        int maxClauses = BooleanQuery.getMaxClauseCount();
+
+        query.add(new TermQuery(new Term("Source", fingerprint.getPath())), BooleanClause.Occur.MUST);
+
+        for (int i = 0; i < indexedParts.size(); i += maxClauses) {
+            BooleanQuery.Builder finishedParts = new BooleanQuery.Builder();
+
+            for (String part : indexedParts.subList(i, Math.min(i + maxClauses, indexedParts.size()))) {
+                String sourceRange = getSourceRange(new File(fingerprint.getPath()), part);
+
+                finishedParts.add(new TermQuery(new Term("SourceRange", sourceRange)), BooleanClause.Occur.SHOULD);
+            }
+            query.add(finishedParts.build(), BooleanClause.Occur.MUST_NOT);
+        }
+        return query.build();
+    }
+
+    /**
+     * Appends the changed fingerprints to the journal (one per line), this should only be done after the index writer committed.
+     */
+    private synchronized void append(Collection<SourceFingerprint> fingerprints) {
+        if (fingerprints.isEmpty()) return;
+
+        File journalFile = OSUtils.getSourcesJournalFile(caseName);
+        StringBuilder lines = new StringBuilder();
+
+        for (SourceFingerprint fingerprint : fingerprints) {
+            synchronized (fingerprint) {
+                lines.append(gson.toJson(fingerprint)).append('\n');
+            }
+        }
+
+        try {
+            Files.write(journalFile.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+            return;
+        }
+
+        if (journalFile.length() > Math.max(MIN_COMPACT_BYTES, OSUtils.getSourcesFile(caseName).length())) {
+            save();
+        }
+    }
+
+    /**
+     * Stores all fingerprints and removes the journal, this should only be done after the index writer committed.
+     */
+    private synchronized void save() {
+        try {
+            File sourcesFile = OSUtils.getSourcesFile(caseName);
+            File temporaryFile = new File(sourcesFile.getPath() + ".tmp");
+
+            Files.write(temporaryFile.toPath(), gson.toJson(new ArrayList<>(fingerprintFromPath.values())).getBytes(StandardCharsets.UTF_8));
+
+            // Removed first, if the move doesn't happen the lost progress is indexed again instead of an old entry being replayed
+            Files.deleteIfExists(OSUtils.getSourcesJournalFile(caseName).toPath());
+            Files.move(temporaryFile.toPath(), sourcesFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+        }
+    }
+
+    private void load() {
+        File sourcesFile = OSUtils.getSourcesFile(caseName);
+
+        if (sourcesFile.exists()) {
+            try {
+                List<SourceFingerprint> fingerprints = gson.fromJson(
+                        new String(Files.readAllBytes(sourcesFile.toPath()), StandardCharsets.UTF_8),
+                        new TypeToken<List<SourceFingerprint>>() {}.getType()
+                );
+
+                if (fingerprints != null) {
+                    fingerprints.forEach(fingerprint -> fingerprintFromPath.put(fingerprint.getPath(), fingerprint));
+                }
+            } catch (IOException ex) {
+                log.error(ex.getMessage(), ex);
+            }
+        }
+
+        File journalFile = OSUtils.getSourcesJournalFile(caseName);
+
+        if (journalFile.exists()) {
+            try {
+                for (String line : Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8)) {
+                    try {
+                        SourceFingerprint fingerprint = gson.fromJson(line, SourceFingerprint.class);
+
+                        if (fingerprint != null) fingerprintFromPath.put(fingerprint.getPath(), fingerprint);
+                    } catch (JsonSyntaxException ex) {
+                        // The last line is incomplete if the application stopped while appending
+                        log.warn("Skipped an incomplete line of the sources journal.");
+                    }
+                }
+            } catch (IOException ex) {
+                log.error(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * @return The SHA-256 hash of the file or null if it couldn't be read.
+     */
+    private String getHash(String path) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            @Cleanup InputStream inputStream = new DigestInputStream(Files.newInputStream(new File(path).toPath()), messageDigest);
+            byte[] buffer = new byte[65536];
+
+            while (inputStream.read(buffer) != -1) {
+                // Read until the end to update the digest
+            }
+
+            StringBuilder hash = new StringBuilder();
+
+            for (byte b : messageDigest.digest()) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (IOException | NoSuchAlgorithmException ex) {
+            log.error(ex.getMessage(), ex);
+            return null;
+        }
+    }
+}
@@ -25,7 +25,9 @@ import com.github.kmeel.api.model.objects.ID;
 import com.github.kmeel.api.spi.listeners.TagListener;
 
 import java.sql.*;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -122,6 +124,28 @@ public class Tags {
         }
     }
 
+    /**
+     * @return The tag of every tagged ID in the case.
+     */
+    public Map<ID, String> getAll() {
+        try {
+            @Cleanup Connection connection = database.getDataSource().getConnection();
+            @Cleanup PreparedStatement statement = connection.prepareStatement("SELECT * FROM Tags WHERE CaseName=?");
+
+            statement.setString(1, caseName);
+
+            @Cleanup ResultSet resultSet = statement.executeQuery();
+            Map<ID, String> tags = new HashMap<>();
+
+            while (resultSet.next()) {
+                tags.put(new ID(resultSet.getString("ID")), resultSet.getString("TagName"));
+            }
+            return tags;
+        } catch (SQLException | NullPointerException ex) {
+            return new HashMap<>(0);
+        }
+    }
+
     /**
      * @return A set of existing tags from the case
      */
@@ -0,0 +1,44 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.model.objects;
+
+import lombok.Data;
+
+/**
+ * @author Marten4n6
+ *         The metadata of an attachment of a CachedMessage, the content is read when it's opened.
+ */
+@Data
+public class CachedAttachment implements AttachmentRow {
+
+    // The position of the attachment in its message
+    private final int index;
+
+    private final String attachmentName;
+    private final String contentType;
+    private final String size;
+    private final String creationTime;
+    private final String modificationTime;
+    private final ID ID;
+
+    long getWeight() {
+        return 96 + 2L * (CachedMessage.length(attachmentName) + CachedMessage.length(contentType) + CachedMessage.length(size)
+                + CachedMessage.length(creationTime) + CachedMessage.length(modificationTime));
+    }
+}
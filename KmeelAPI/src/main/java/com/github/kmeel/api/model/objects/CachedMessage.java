@@ -0,0 +1,51 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.model.objects;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * @author Marten4n6
+ *         The decoded content of a message, kept in the MessageCache.
+ */
+@Data
+public class CachedMessage {
+
+    private final String body;
+    private final String headers;
+    private final List<CachedAttachment> attachments;
+
+    /**
+     * @return The approximate amount of memory used by this message in bytes.
+     */
+    public long getWeight() {
+        long weight = 64 + 2L * (length(body) + length(headers));
+
+        for (CachedAttachment attachment : attachments) {
+            weight += attachment.getWeight();
+        }
+        return weight;
+    }
+
+    static int length(String text) {
+        return text != null ? text.length() : 0;
+    }
+}
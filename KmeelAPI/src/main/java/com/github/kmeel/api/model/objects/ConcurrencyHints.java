@@ -0,0 +1,35 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.model.objects;
+
+import lombok.Data;
+
+/**
+ * @author Marten4n6
+ *         Tells the ingestion scheduler how a parser wants to receive files.
+ */
+@Data
+public class ConcurrencyHints {
+
+    // The maximum amount of parseFiles calls running at the same time
+    private final int maxConcurrentBatches;
+
+    // The amount of files given to a single parseFiles call
+    private final int batchSize;
+}
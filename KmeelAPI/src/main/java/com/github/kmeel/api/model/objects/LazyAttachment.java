@@ -0,0 +1,118 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.kmeel.api.model.objects;
+
+import com.github.kmeel.api.KmeelAPI;
+import com.github.kmeel.api.model.MessageCache;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+/**
+ * @author Marten4n6
+ *         Attachment which only opens its source when the content is read, every call to
+ *         getInputStream returns a new stream (which should be closed by the caller).
+ *         Small attachments are kept in the attachment cache of the case so opening them again doesn't read the source.
+ */
+@Slf4j
+public abstract class LazyAttachment implements MessageAttachment {
+
+    // A single attachment may use this part of the cache, larger ones are always streamed from the source
+    private static final int MAX_CACHED_PART = 4;
+
+    private final KmeelAPI kmeelAPI;
+    private final ID cacheID;
+    private final AttachmentRow row;
+
+    /**
+     * @param messageID The message of this attachment.
+     * @param index     The position of the attachment in its message.
+     */
+    public LazyAttachment(KmeelAPI kmeelAPI, ID messageID, int index, AttachmentRow row) {
+        this.kmeelAPI = kmeelAPI;
+        this.cacheID = new ID(messageID.getId() + "/" + index);
+        this.row = row;
+    }
+
+    /**
+     * @return A new stream of the attachment content from the source.
+     */
+    protected abstract InputStream openStream() throws Exception;
+
+    @Override
+    public String getAttachmentName() {
+        return row.getAttachmentName();
+    }
+
+    @Override
+    public AttachmentRow getRow() {
+        return row;
+    }
+
+    /**
+     * @return A new stream of the attachment content, null if the source can't be read.
+     */
+    @Override
+    public InputStream getInputStream() {
+        MessageCache<byte[]> attachmentCache = kmeelAPI.attachmentCache();
+        byte[] content = attachmentCache.getIfPresent(cacheID);
+
+        if (content != null) return new ByteArrayInputStream(content);
+
+        InputStream inputStream = null;
+
+        try {
+            inputStream = openStream();
+
+            if (inputStream == null) return null;
+
+            long maxCachedBytes = kmeelAPI.settings().getInt("AttachmentCacheMB", 32) * 1024L * 1024L / MAX_CACHED_PART;
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+
+            while (outputStream.size() <= maxCachedBytes && (read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+
+            if (outputStream.size() > maxCachedBytes) {
+                // Too large to cache, the part already read is followed by the rest of the source
+                return new SequenceInputStream(new ByteArrayInputStream(outputStream.toByteArray()), inputStream);
+            }
+            inputStream.close();
+
+            content = outputStream.toByteArray();
+            attachmentCache.put(cacheID, content);
+            return new ByteArrayInputStream(content);
+        } catch (Exception ex) {
+            log.error(ex.getMessage(), ex);
+
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.model.objects;
+
+import lombok.Data;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * @author Marten4n6
+ *         The outcome of a batch of files given to a parser.
+ */
+@Data
+public class ParseResult {
+
+    private final int parsedFiles;
+    private final Map<File, Throwable> failedFiles;
+    private final int skippedFiles;
+    private final long durationMillis;
+
+    /**
+     * @return The amount of parsed (or failed) files per second.
+     */
+    public double getFilesPerSecond() {
+        int files = parsedFiles + failedFiles.size();
+
+        return durationMillis > 0 ? files * 1000.0 / durationMillis : files;
+    }
+}
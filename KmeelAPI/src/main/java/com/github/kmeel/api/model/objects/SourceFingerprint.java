@@ -0,0 +1,54 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.model.objects;
+
+import lombok.Data;
+
+import java.util.Set;
+
+/**
+ * @author Marten4n6
+ *         Used to detect if a source file changed since it was indexed.
+ */
+@Data
+public class SourceFingerprint {
+
+    private final String path;
+    private final long size, lastModified;
+    private String hash;
+
+    /**
+     * False until all parsers finished indexing the source.
+     */
+    private boolean indexed = false;
+
+    /**
+     * Parts of the source which were indexed before the last checkpoint, null once the source is indexed.
+     */
+    private Set<String> indexedParts;
+
+    /**
+     * @return True if both fingerprints are from the same file contents.
+     */
+    public boolean matches(SourceFingerprint fingerprint) {
+        return size == fingerprint.getSize()
+                && lastModified == fingerprint.getLastModified()
+                && (hash == null || fingerprint.getHash() == null || hash.equals(fingerprint.getHash()));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.spi;
+
+import com.github.kmeel.api.KmeelAPI;
+import com.github.kmeel.api.model.objects.ConcurrencyHints;
+import com.github.kmeel.api.model.objects.ID;
+import com.github.kmeel.api.model.objects.Message;
+import com.github.kmeel.api.view.LoadingView;
+import ro.fortsoft.pf4j.ExtensionPoint;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * @author Marten4n6
+ *         Pluginable interface for parsing batches of files, replaces the Parser interface.
+ *         Parsers which still implement Parser are adapted by LegacyParserAdapter.
+ * @see com.github.kmeel.api.model.Plugins#getParsers()
+ */
+public interface BatchParser extends ExtensionPoint {
+
+    /**
+     * @return The name of this parser.
+     */
+    String getName();
+
+    /**
+     * @return A set of file extensions this parser accepts.
+     */
+    Set<String> getAcceptedExtensions();
+
+    /**
+     * Called before parsing starts
+     *
+     * @param kmeelAPI    API to interact with the current case.
+     * @param loadingView Loading view for adding tasks.
+     */
+    void setup(KmeelAPI kmeelAPI, LoadingView loadingView);
+
+    /**
+     * Starts parsing the batch of files, this method shouldn't wait for the files to be parsed.
+     *
+     * @param files                The batch of files to parse.
+     * @param totalFiles           The amount of files this parser accepts.
+     * @param fileFinishedListener Called once for every file of the batch.
+     * @return The handle which every file is reported to.
+     */
+    ParseHandle parseFiles(List<File> files, int totalFiles, Consumer<File> fileFinishedListener);
+
+    /**
+     * @return How the ingestion scheduler should hand files to this parser.
+     */
+    default ConcurrencyHints getConcurrencyHints() {
+        return new ConcurrencyHints(1, 1);
+    }
+
+    /**
+     * @return The Message from the ID.
+     * @see Message
+     */
+    Message getMessage(ID id);
+}
@@ -0,0 +1,110 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.spi;
+
+import com.github.kmeel.api.KmeelAPI;
+import com.github.kmeel.api.model.objects.ConcurrencyHints;
+import com.github.kmeel.api.model.objects.ID;
+import com.github.kmeel.api.model.objects.Message;
+import com.github.kmeel.api.view.LoadingView;
+import lombok.Getter;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * @author Marten4n6
+ *         Runs a Parser as a BatchParser, the files of a batch are handed to the
+ *         Parser one by one (up to Parser::getMaxConcurrentFiles at once).
+ *         Cancelling skips the files which haven't been handed to the Parser yet.
+ */
+public class LegacyParserAdapter implements BatchParser {
+
+    private final @Getter Parser parser;
+
+    public LegacyParserAdapter(Parser parser) {
+        this.parser = parser;
+    }
+
+    @Override
+    public String getName() {
+        return parser.getName();
+    }
+
+    @Override
+    public Set<String> getAcceptedExtensions() {
+        return parser.getAcceptedExtensions();
+    }
+
+    @Override
+    public void setup(KmeelAPI kmeelAPI, LoadingView loadingView) {
+        parser.setup(kmeelAPI, loadingView);
+    }
+
+    @Override
+    public ParseHandle parseFiles(List<File> files, int totalFiles, Consumer<File> fileFinishedListener) {
+        ParseHandle handle = new ParseHandle(files, fileFinishedListener);
+        Iterator<File> remainingFiles = files.iterator();
+
+        for (int i = 0; i < Math.max(1, parser.getMaxConcurrentFiles()); i++) {
+            parseNextFile(handle, remainingFiles, totalFiles);
+        }
+        return handle;
+    }
+
+    private void parseNextFile(ParseHandle handle, Iterator<File> remainingFiles, int totalFiles) {
+        File file;
+
+        synchronized (remainingFiles) {
+            if (handle.isCancelled()) {
+                remainingFiles.forEachRemaining(handle::fileSkipped);
+                return;
+            }
+            if (!remainingFiles.hasNext()) return;
+
+            file = remainingFiles.next();
+        }
+
+        try {
+            parser.parseFile(file, totalFiles, (event) -> {
+                handle.fileParsed(file);
+                parseNextFile(handle, remainingFiles, totalFiles);
+            });
+        } catch (Exception ex) {
+            handle.fileFailed(file, ex);
+            parseNextFile(handle, remainingFiles, totalFiles);
+        }
+    }
+
+    /**
+     * Every file is a batch, so the Parser keeps deciding how many files it parses at once.
+     */
+    @Override
+    public ConcurrencyHints getConcurrencyHints() {
+        return new ConcurrencyHints(Math.max(1, parser.getMaxConcurrentFiles()), 1);
+    }
+
+    @Override
+    public Message getMessage(ID id) {
+        return parser.getMessage(id);
+    }
+}
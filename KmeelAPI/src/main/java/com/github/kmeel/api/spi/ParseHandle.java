@@ -0,0 +1,126 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.spi;
+
+import com.github.kmeel.api.model.objects.ParseResult;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * @author Marten4n6
+ *         Returned by a BatchParser for a batch of files.
+ *         The parser reports every file once (parsed, failed or skipped),
+ *         the result completes once every file of the batch is reported.
+ */
+public class ParseHandle {
+
+    private final int fileAmount;
+    private final Consumer<File> fileFinishedListener;
+    private final long startTime = System.currentTimeMillis();
+
+    private final Set<File> finishedFiles = ConcurrentHashMap.newKeySet();
+    private final Map<File, Throwable> failedFiles = new ConcurrentHashMap<>();
+    private final AtomicInteger skippedFiles = new AtomicInteger(0);
+
+    private final AtomicBoolean isCancelled = new AtomicBoolean(false);
+    private final List<Runnable> cancelListeners = new ArrayList<>();
+    private final CompletableFuture<ParseResult> result = new CompletableFuture<>();
+
+    /**
+     * @param files                The batch of files.
+     * @param fileFinishedListener Called once for every reported file (may be null).
+     */
+    public ParseHandle(List<File> files, Consumer<File> fileFinishedListener) {
+        this.fileAmount = new HashSet<>(files).size();
+        this.fileFinishedListener = fileFinishedListener;
+
+        if (fileAmount == 0) complete();
+    }
+
+    public void fileParsed(File file) {
+        fileFinished(file);
+    }
+
+    public void fileFailed(File file, Throwable throwable) {
+        if (!finishedFiles.contains(file)) failedFiles.put(file, throwable);
+        fileFinished(file);
+    }
+
+    /**
+     * Should be called for files which weren't parsed because the batch was cancelled.
+     */
+    public void fileSkipped(File file) {
+        if (!finishedFiles.contains(file)) skippedFiles.incrementAndGet();
+        fileFinished(file);
+    }
+
+    private void fileFinished(File file) {
+        if (!finishedFiles.add(file)) return; // Already reported
+
+        if (fileFinishedListener != null) fileFinishedListener.accept(file);
+        if (finishedFiles.size() == fileAmount) complete();
+    }
+
+    private void complete() {
+        int parsedFiles = fileAmount - failedFiles.size() - skippedFiles.get();
+
+        result.complete(new ParseResult(parsedFiles, new HashMap<>(failedFiles), skippedFiles.get(), System.currentTimeMillis() - startTime));
+    }
+
+    /**
+     * Asks the parser to stop, files which haven't been started should be skipped.
+     */
+    public void cancel() {
+        if (isCancelled.compareAndSet(false, true)) {
+            List<Runnable> listeners;
+
+            synchronized (cancelListeners) {
+                listeners = new ArrayList<>(cancelListeners);
+            }
+            listeners.forEach(Runnable::run);
+        }
+    }
+
+    public boolean isCancelled() {
+        return isCancelled.get();
+    }
+
+    /**
+     * @param listener Called once the batch is cancelled, for parsers which can abort running work.
+     */
+    public void addCancelListener(Runnable listener) {
+        synchronized (cancelListeners) {
+            cancelListeners.add(listener);
+        }
+        if (isCancelled()) listener.run();
+    }
+
+    /**
+     * @return The result, which completes once every file is reported.
+     */
+    public CompletableFuture<ParseResult> getResult() {
+        return result;
+    }
+}
@@ -61,6 +61,16 @@ public interface Parser extends ExtensionPoint {
      */
     void parseFile(File file, int totalFiles, ActionListener finishedListener);
 
+    /**
+     * The ingestion scheduler never runs more than this amount of
+     * parseFile calls of this parser at the same time.
+     *
+     * @return The maximum amount of files this parser can parse at once.
+     */
+    default int getMaxConcurrentFiles() {
+        return 1;
+    }
+
     /**
      * @return The Message from the ID.
      * @see Message
@@ -22,6 +22,8 @@ import javafx.scene.control.CheckBoxTreeItem;
 import com.github.kmeel.api.view.MessagePane;
 import ro.fortsoft.pf4j.ExtensionPoint;
 
+import java.util.List;
+
 /**
  * @author Marten4n6
  *         Pluginable interface used by the TreeTabPlugin.
@@ -42,4 +44,16 @@ public interface PluginableFileTree extends ExtensionPoint {
      * @param messagePane The MessagePane to update.
      */
     void treeSelectionUpdate(CheckBoxTreeItem<Object> updatedItem, boolean removed, MessagePane messagePane);
+
+    /**
+     * Called once for all tree items updated together (for example when a parent is checked),
+     * override this to update the MessagePane once instead of once per item.
+     *
+     * @param updatedItems The CheckBoxTreeItems updated
+     * @param removed      True if the items were removed.
+     * @param messagePane  The MessagePane to update.
+     */
+    default void treeSelectionUpdate(List<CheckBoxTreeItem<Object>> updatedItems, boolean removed, MessagePane messagePane) {
+        updatedItems.forEach(updatedItem -> treeSelectionUpdate(updatedItem, removed, messagePane));
+    }
 }
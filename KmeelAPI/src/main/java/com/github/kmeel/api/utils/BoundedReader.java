@@ -0,0 +1,90 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.api.utils;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * @author Marten4n6
+ *         Reader which stops after the maximum amount of characters,
+ *         the listener is called once if the underlying reader had more.
+ */
+public class BoundedReader extends FilterReader {
+
+    private final long maxChars;
+    private final Runnable truncatedListener;
+
+    private long readChars = 0;
+    private boolean isTruncated = false;
+
+    /**
+     * @param truncatedListener Called once the maximum is reached while there is more to read (may be null).
+     */
+    public BoundedReader(Reader reader, long maxChars, Runnable truncatedListener) {
+        super(reader);
+        this.maxChars = maxChars;
+        this.truncatedListener = truncatedListener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        char[] buffer = new char[1];
+        return read(buffer, 0, 1) == -1 ? -1 : buffer[0];
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (readChars >= maxChars) {
+            checkTruncated();
+            return -1;
+        }
+
+        int read = super.read(buffer, offset, (int) Math.min(length, maxChars - readChars));
+        if (read > 0) readChars += read;
+        return read;
+    }
+
+    /**
+     * Peeks at the underlying reader to find out if anything was cut off.
+     */
+    private void checkTruncated() throws IOException {
+        if (!isTruncated && super.read() != -1) {
+            isTruncated = true;
+            if (truncatedListener != null) truncatedListener.run();
+        }
+    }
+
+    @Override
+    public long skip(long amount) throws IOException {
+        long skipped = super.skip(Math.min(amount, maxChars - readChars));
+        readChars += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    public boolean isTruncated() {
+        return isTruncated;
+    }
+}
@@ -62,6 +62,14 @@ public class OSUtils {
         return getCasesPath() + caseName + File.separator + "Index" + File.separator;
     }
 
+    public static File getSourcesFile(String caseName) {
+        return new File(getCasesPath() + caseName + File.separator + "Sources.json");
+    }
+
+    public static File getSourcesJournalFile(String caseName) {
+        return new File(getCasesPath() + caseName + File.separator + "Sources.log");
+    }
+
     public static String getPluginPath() {
         return getApplicationPath() + "plugins" + File.separator;
     }
@@ -23,22 +23,34 @@ import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import com.github.kmeel.api.view.taskprogress.TaskProgressView;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Marten4n6
  */
 public class LoadingView {
 
-    private ExecutorService executorService = Executors.newFixedThreadPool(2);
+    // Tasks added by parsers wait until their file is parsed, so every task needs its own thread
+    private ExecutorService executorService = Executors.newCachedThreadPool();
     private Stage stage;
     private TaskProgressView taskProgressView;
 
+    private Label labelProgress;
+    private ProgressBar progressBar;
+
+    private AtomicLong finishedFiles = new AtomicLong(0);
+    private AtomicLong totalFiles = new AtomicLong(0);
+    private AtomicBoolean progressUpdatePending = new AtomicBoolean(false);
+
     public void show() {
         stage = new Stage();
         BorderPane borderPane = new BorderPane();
@@ -50,13 +62,20 @@ public class LoadingView {
         // Scene
         Label labelInformation = new Label("Waiting for parsers to finish...");
         taskProgressView = new TaskProgressView();
+        labelProgress = new Label();
+        progressBar = new ProgressBar(0);
 
         labelInformation.setPadding(new Insets(0, 0, 5, 0));
         borderPane.setPadding(new Insets(5, 5, 5, 5));
+        progressBar.setMaxWidth(Double.MAX_VALUE);
 
         // Add
+        VBox vBoxProgress = new VBox(5, labelProgress, progressBar);
+        vBoxProgress.setPadding(new Insets(5, 0, 0, 0));
+
         borderPane.setTop(labelInformation);
         borderPane.setCenter(taskProgressView);
+        borderPane.setBottom(vBoxProgress);
 
         stage.setScene(scene);
         stage.centerOnScreen();
@@ -71,6 +90,27 @@ public class LoadingView {
         executorService.submit(task);
     }
 
+    /**
+     * Updates the progress of all parsers combined,
+     * may be called from any thread as often as needed.
+     */
+    public void updateProgress(long finished, long total) {
+        finishedFiles.set(finished);
+        totalFiles.set(total);
+
+        // Only one update waits on the FX thread at a time
+        if (!progressUpdatePending.getAndSet(true)) {
+            Platform.runLater(() -> {
+                progressUpdatePending.set(false);
+
+                if (labelProgress != null) {
+                    labelProgress.setText("Parsed " + finishedFiles.get() + " of " + totalFiles.get() + " files");
+                    progressBar.setProgress(totalFiles.get() == 0 ? 0 : (double) finishedFiles.get() / totalFiles.get());
+                }
+            });
+        }
+    }
+
     /**
      * Stops all tasks and closes the loading view
      */
@@ -67,6 +67,9 @@ public class MessagePane {
 
     private Tab tabAttachments;
 
+    // Called when the table is scrolled to the last row, used to load more rows
+    private @Setter Runnable onScrolledToEnd;
+
     public MessagePane(KmeelAPI kmeelAPI) {
         this.kmeelAPI = kmeelAPI;
         pane = new BorderPane();
@@ -234,6 +237,18 @@ public class MessagePane {
         pane.setBottom(footerLabel);
 
         // Listeners
+        table.skinProperty().addListener((observable, oldSkin, newSkin) -> {
+            // The scroll bars are created by the skin
+            table.lookupAll(".scroll-bar").stream()
+                    .filter(node -> node instanceof ScrollBar)
+                    .map(node -> (ScrollBar) node)
+                    .filter(scrollBar -> scrollBar.getOrientation() == Orientation.VERTICAL)
+                    .forEach(scrollBar -> scrollBar.valueProperty().addListener((valueObservable, oldValue, newValue) -> {
+                        if (onScrolledToEnd != null && newValue.doubleValue() >= scrollBar.getMax()) {
+                            onScrolledToEnd.run();
+                        }
+                    }));
+        });
         table.getSelectionModel().selectedItemProperty().addListener((ObservableValue<? extends MessageRow> observableValue, MessageRow oldSelection, MessageRow newSelection) -> {
             Platform.runLater(() -> {
                 if (observableValue.getValue() == null) return;
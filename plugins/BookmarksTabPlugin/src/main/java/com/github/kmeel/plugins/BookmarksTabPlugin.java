@@ -19,7 +19,9 @@
 package com.github.kmeel.plugins;
 
 import com.github.kmeel.api.KmeelAPI;
+import com.github.kmeel.api.model.MessageRows;
 import com.github.kmeel.api.model.objects.ID;
+import com.github.kmeel.api.model.objects.MessageRow;
 import com.github.kmeel.api.spi.GlobalTab;
 import com.github.kmeel.api.spi.listeners.BookmarkListener;
 import com.github.kmeel.api.spi.listeners.TagListener;
@@ -34,6 +36,9 @@ import ro.fortsoft.pf4j.Extension;
 import ro.fortsoft.pf4j.Plugin;
 import ro.fortsoft.pf4j.PluginWrapper;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * @author Marten4n6
  *         This plugin adds the bookmarks tab
@@ -75,11 +80,9 @@ public class BookmarksTabPlugin extends Plugin {
             // Add
             gridPane.add(messagePane.getPane(), 0, 1);
 
-            kmeelAPI.bookmarks().get().forEach(id -> {
-                Platform.runLater(() -> {
-                    messagePane.getTable().getItems().add(kmeelAPI.messages().getMessage(id).getRow());
-                });
-            });
+            List<MessageRow> rows = new MessageRows(kmeelAPI).getRows(kmeelAPI.bookmarks().get());
+
+            Platform.runLater(() -> messagePane.getTable().getItems().addAll(rows));
             return tab;
         }
 
@@ -87,9 +90,9 @@ public class BookmarksTabPlugin extends Plugin {
         public void bookmarkAdded(ID id) {
             messagePane.updateFooter();
 
-            Platform.runLater(() -> {
-                messagePane.getTable().getItems().add(kmeelAPI.messages().getMessage(id).getRow());
-            });
+            List<MessageRow> rows = new MessageRows(kmeelAPI).getRows(Collections.singletonList(id));
+
+            Platform.runLater(() -> messagePane.getTable().getItems().addAll(rows));
         }
 
         @Override
@@ -19,6 +19,9 @@
 package com.github.kmeel.plugins;
 
 import com.github.kmeel.api.KmeelAPI;
+import com.github.kmeel.api.model.FieldLimits;
+import com.github.kmeel.api.model.PipelineStage;
+import com.github.kmeel.api.model.Settings;
 import com.github.kmeel.api.model.objects.AttachmentRow;
 import com.github.kmeel.api.model.objects.ID;
 import com.github.kmeel.api.model.objects.MessageAttachment;
@@ -33,30 +36,32 @@ import com.github.kmeel.plugins.handlers.MessageSelectionHandler;
 import com.github.kmeel.plugins.handlers.TreeSelectionHandler;
 import com.github.kmeel.plugins.model.EMLIndexer;
 import com.github.kmeel.plugins.model.EMLModel;
+import com.github.kmeel.plugins.model.EMLRecord;
+import com.github.kmeel.plugins.model.ParsedMessage;
 import com.github.kmeel.plugins.view.LoadingTask;
 import javafx.application.Platform;
-import javafx.concurrent.Task;
 import javafx.scene.control.CheckBoxTreeItem;
 import javafx.scene.control.TreeItem;
-import lombok.Cleanup;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FilenameUtils;
 import ro.fortsoft.pf4j.Extension;
 import ro.fortsoft.pf4j.Plugin;
 import ro.fortsoft.pf4j.PluginWrapper;
 
-import javax.mail.MessagingException;
-import javax.mail.internet.MimeMessage;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -76,7 +81,15 @@ public class EMLParserPlugin extends Plugin {
         private static EMLModel emlModel;
         private static EMLIndexer emlIndexer;
 
-        private static boolean isParsed;
+        // Reads and decodes EMLs, they are small so more files than processors are read at once
+        private static ExecutorService executorService;
+
+        // Body extraction -> document building -> index writing
+        private static PipelineStage<EMLRecord, EMLRecord> pipeline;
+        private static FieldLimits fieldLimits;
+
+        // Files waiting in the pipeline are still being parsed for the ingestion scheduler
+        private static int maxConcurrentFiles;
 
         // Loading
         private static LoadingView loadingView;
@@ -86,7 +99,8 @@ public class EMLParserPlugin extends Plugin {
         // Tree
         private static boolean isTreePluginEnabled;
         private static CheckBoxTreeItem<TreeObject> rootTreeItem;
-        private static HashMap<String, TreeItem<TreeObject>> rootTreeChilden;
+        private static Map<String, TreeItem<TreeObject>> rootTreeChilden;
+        private static Map<String, Integer> emlAmountFromDirectory;
 
         @Override
         public String getName() {
@@ -105,89 +119,145 @@ public class EMLParserPlugin extends Plugin {
         public void setup(KmeelAPI api, LoadingView loadingThing) {
             kmeelAPI = api;
             emlModel = new EMLModel(api);
+            if (emlIndexer != null) kmeelAPI.indexer().removeCheckpointListener(emlIndexer);
             emlIndexer = new EMLIndexer(api);
-
-            isParsed = Boolean.parseBoolean(kmeelAPI.settings().get(getName() + "-IsParsed"));
+            kmeelAPI.indexer().addCheckpointListener(emlIndexer);
 
             loadingView = loadingThing;
             loadingTask = null;
             loadingProgress = new AtomicInteger(0);
+
+            isTreePluginEnabled = !KmeelAPI.isHeadless() && kmeelAPI.plugins().getPluginManager().getExtensions(PluginableFileTree.class).size() != 0;
+            rootTreeItem = new CheckBoxTreeItem<>(new TreeObject("EMLs", null));
+            rootTreeChilden = new ConcurrentHashMap<>();
+            emlAmountFromDirectory = new ConcurrentHashMap<>();
+
+            // Nothing is being parsed during setup, so the stages can be replaced with the current settings
+            if (executorService != null) executorService.shutdown();
+            if (pipeline != null) pipeline.shutdown();
+
+            Settings settings = kmeelAPI.settings();
+            int processors = Runtime.getRuntime().availableProcessors();
+            int readThreads = Math.max(1, settings.getInt("ReadThreads", processors * 2));
+            int queueSize = settings.getInt("PipelineQueueSize", 1000);
+
+            PipelineStage<EMLRecord, Void> indexStage = new PipelineStage<>("EML index", settings.getInt("IndexThreads", 2), queueSize, (record) -> {
+                // Marks the source as indexed once the document has been added
+                emlIndexer.addDocument(record.getDocument(), new File(record.getPath()));
+                return null;
+            }, null);
+            fieldLimits = kmeelAPI.fieldLimits();
+
+            PipelineStage<EMLRecord, EMLRecord> documentStage = new PipelineStage<>("EML documents", settings.getInt("DocumentThreads", processors), queueSize, (record) -> {
+                return EMLIndexer.createDocument(record, fieldLimits);
+            }, indexStage);
+
+            pipeline = new PipelineStage<>("EML bodies", settings.getInt("BodyThreads", processors), queueSize, EMLIndexer::extractBody, documentStage);
+            executorService = Executors.newFixedThreadPool(readThreads);
+            maxConcurrentFiles = readThreads + queueSize;
         }
 
         @Override
-        public void parseFile(File file, int totalFiles, ActionListener finishedListener) {
-            if (!isParsed) {
-                Task<Void> task = new Task<Void>() {
-                    @Override
-                    protected Void call() throws Exception {
-                        if (loadingTask == null) {
-                            loadingTask = new LoadingTask();
-                            isTreePluginEnabled = kmeelAPI.plugins().getPluginManager().getExtensions(PluginableFileTree.class).size() != 0;
-
-                            Platform.runLater(() -> loadingView.addTask(loadingTask));
-
-                            if (isTreePluginEnabled) {
-                                rootTreeItem = new CheckBoxTreeItem<>(new TreeObject("EMLs", null));
-                                rootTreeChilden = new HashMap<>();
-                            }
-                        }
-
-                        loadingTask.updateMessage("Indexing: " + file.getParent());
-                        loadingTask.updateProgress(loadingProgress.get(), totalFiles);
-
-                        @Cleanup InputStream messageInputStream = Files.newInputStream(Paths.get(file.getPath()));
-                        MimeMessage message = new MimeMessage(null, messageInputStream);
-
-                        emlIndexer.indexMessage(message, file.getPath(), file.getParent());
-
-                        if (isTreePluginEnabled) {
-                            if (rootTreeChilden.get(file.getParent()) == null) {
-                                String folderName = new File(file.getParent()).getName() + " (" + getEMLAmountInDirectory(file.getParentFile()) + ")";
-                                CheckBoxTreeItem<TreeObject> folderNameItem = new CheckBoxTreeItem<>(new TreeObject(folderName, file.getParent()));
+        public int getMaxConcurrentFiles() {
+            return maxConcurrentFiles;
+        }
 
-                                rootTreeItem.getChildren().add(folderNameItem);
-                                rootTreeChilden.put(file.getParent(), folderNameItem);
-                            }
+        @Override
+        public void parseFile(File file, int totalFiles, ActionListener finishedListener) {
+            // True once the EML is passed on to the pipeline, which finishes the file.
+            // Not a JavaFX Task, so this also works without the FX toolkit (command-line mode)
+            Callable<Boolean> task = () -> {
+                LoadingTask loadingTask = getLoadingTask();
+
+                if (loadingTask != null) {
+                    loadingTask.updateMessage("Indexing: " + file.getParent());
+                    loadingTask.updateProgress(loadingProgress.get(), totalFiles);
+                }
+
+                if (isTreePluginEnabled) {
+                    rootTreeChilden.computeIfAbsent(file.getParent(), (directory) -> {
+                        String folderName = new File(directory).getName() + " (" + getEMLAmountInDirectory(file.getParentFile()) + ")";
+                        CheckBoxTreeItem<TreeObject> folderNameItem = new CheckBoxTreeItem<>(new TreeObject(folderName, directory));
+
+                        synchronized (rootTreeItem) {
+                            rootTreeItem.getChildren().add(folderNameItem);
                         }
-                        return null;
-                    }
+                        return folderNameItem;
+                    });
+                }
+
+                if (!kmeelAPI.sources().isIndexed(file)) {
+                    EMLRecord record = new EMLRecord(ParsedMessage.parse(file, fieldLimits.getMaxFieldChars()), file.getPath(), file.getParent());
+
+                    // Blocks while the pipeline is full
+                    pipeline.submit(record, () -> fileFinished(totalFiles, finishedListener));
+                    return true;
+                }
+                return false;
+            };
+
+            executorService.submit(() -> {
+                try {
+                    if (!task.call()) fileFinished(totalFiles, finishedListener);
+                } catch (Exception ex) {
+                    log.error("Failed to parse " + file.getPath(), ex);
+                    fileFinished(totalFiles, finishedListener);
+                }
+            });
+        }
 
-                    private int getEMLAmountInDirectory(File directory) {
-                        AtomicInteger amount = new AtomicInteger(0);
-
-                        try {
-                            Files.list(Paths.get(directory.getPath())).forEach(path -> {
-                                if (FilenameUtils.getExtension(path.toString()).equals("eml")) {
-                                    amount.incrementAndGet();
-                                }
-                            });
-                        } catch (IOException ex) {
-                            log.error(ex.getMessage(), ex);
-                        }
-                        return amount.get();
-                    }
+        /**
+         * @return The loading task, null in command-line mode.
+         */
+        private static synchronized LoadingTask getLoadingTask() {
+            if (loadingTask == null && !KmeelAPI.isHeadless()) {
+                LoadingTask newLoadingTask = new LoadingTask();
 
-                };
+                Platform.runLater(() -> loadingView.addTask(newLoadingTask));
+                loadingTask = newLoadingTask;
+            }
+            return loadingTask;
+        }
 
-                task.setOnSucceeded((event) -> {
-                    if (finishedListener != null) finishedListener.actionPerformed(null);
-                    loadingProgress.incrementAndGet();
+        /**
+         * Called once for every file (once it left the pipeline), the last file flushes the indexer and adds the tree.
+         */
+        private void fileFinished(int totalFiles, ActionListener finishedListener) {
+            if (loadingProgress.incrementAndGet() == totalFiles) {
+                emlIndexer.flush();
+
+                if (isTreePluginEnabled) {
+                    Platform.runLater(() -> {
+                        kmeelAPI.plugins().getPluginManager().getExtensions(PluginableFileTree.class).forEach(pluginableFileTree -> {
+                            pluginableFileTree.addTreeItem(rootTreeItem);
+                        });
+                    });
+                }
+
+                LoadingTask loadingTask = getLoadingTask();
+                if (loadingTask != null) loadingTask.done();
+            }
 
-                    if (loadingTask != null && loadingProgress.get() == totalFiles) {
-                        kmeelAPI.settings().set(getName() + "-Parsed", "true");
+            if (finishedListener != null) finishedListener.actionPerformed(null);
+        }
 
-                        if (isTreePluginEnabled) {
-                            kmeelAPI.plugins().getPluginManager().getExtensions(PluginableFileTree.class).forEach(pluginableFileTree -> {
-                                pluginableFileTree.addTreeItem(rootTreeItem);
-                            });
-                        }
+        /**
+         * @return The amount of EMLs in the directory, which is only counted once.
+         */
+        private int getEMLAmountInDirectory(File directory) {
+            return emlAmountFromDirectory.computeIfAbsent(directory.getPath(), (path) -> {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(path), "*.{eml,EML}")) {
+                    int amount = 0;
 
-                        loadingTask.done();
+                    for (Path ignored : stream) {
+                        amount++;
                     }
-                });
-
-                new Thread(task).start();
-            }
+                    return amount;
+                } catch (IOException ex) {
+                    log.error(ex.getMessage(), ex);
+                    return 0;
+                }
+            });
         }
 
         @Override
@@ -212,5 +282,10 @@ public class EMLParserPlugin extends Plugin {
         public void treeSelectionUpdate(CheckBoxTreeItem<Object> updatedItem, boolean removed, MessagePane messagePane) {
             TreeSelectionHandler.getInstance().handle(kmeelAPI, updatedItem, removed, messagePane);
         }
+
+        @Override
+        public void treeSelectionUpdate(List<CheckBoxTreeItem<Object>> updatedItems, boolean removed, MessagePane messagePane) {
+            TreeSelectionHandler.getInstance().handle(kmeelAPI, updatedItems, removed, messagePane);
+        }
     }
 }
@@ -19,8 +19,9 @@
 package com.github.kmeel.plugins.handlers;
 
 import com.github.kmeel.api.model.objects.AttachmentRow;
-import com.github.kmeel.api.model.objects.ID;
 import com.github.kmeel.api.model.objects.Message;
+import com.github.kmeel.api.model.objects.MessageAttachment;
+import com.github.kmeel.api.model.objects.MessageRow;
 import com.github.kmeel.api.utils.OSUtils;
 import com.github.kmeel.api.view.MessagePane;
 import com.github.kmeel.plugins.model.EMLModel;
@@ -32,6 +33,7 @@ import lombok.extern.slf4j.Slf4j;
 import javax.swing.*;
 import java.awt.*;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -52,16 +54,27 @@ public class AttachmentSelectionHandler {
 
     public void handle(MessagePane messagePane) {
         AttachmentRow row = messagePane.getAttachmentsTable().getSelectionModel().getSelectedItem();
-        ID attachmentID = row.getID();
+        MessageRow messageRow = messagePane.getTable().getSelectionModel().getSelectedItem();
 
-        if (emlModel.getAttachmentFromID().get(attachmentID) != null) {
+        if (row == null || messageRow == null) return;
+
+        Message message = emlModel.getMessage(messageRow.getId());
+        MessageAttachment attachment = message == null ? null : message.getAttachments().stream()
+                .filter(messageAttachment -> messageAttachment.getRow().equals(row))
+                .findFirst()
+                .orElse(null);
+
+        if (attachment != null) {
             Optional<ButtonType> confirmOpen = new Alert(Alert.AlertType.CONFIRMATION, "Would you like to open this attachment?", ButtonType.YES, ButtonType.NO).showAndWait();
 
             if (confirmOpen.isPresent() && confirmOpen.get() == ButtonType.YES) {
                 Path outputPath = Paths.get(OSUtils.getTempPath() + row.getAttachmentName());
 
-                try {
-                    Files.copy(emlModel.getAttachmentFromID().get(attachmentID), outputPath, StandardCopyOption.REPLACE_EXISTING);
+                // The content is only read now
+                try (InputStream inputStream = attachment.getInputStream()) {
+                    if (inputStream == null) throw new IOException("The attachment can't be read.");
+
+                    Files.copy(inputStream, outputPath, StandardCopyOption.REPLACE_EXISTING);
 
                     SwingUtilities.invokeLater(() -> {
                         try {
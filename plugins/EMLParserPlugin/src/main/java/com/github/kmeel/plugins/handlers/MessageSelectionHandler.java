@@ -40,8 +40,6 @@ public class MessageSelectionHandler {
     public void handle(MessagePane messagePane, ID id) {
         Message message = emlModel.getMessage(id);
 
-        emlModel.getAttachmentFromID().clear();
-
         if (message != null) {
             List<MessageAttachment> attachments = message.getAttachments();
 
@@ -49,9 +47,8 @@ public class MessageSelectionHandler {
             messagePane.setHeadersText(message.getHeaders().replaceAll("\n", "<br/>"));
             messagePane.setAttachmentTabAmount(attachments.size());
 
+            // Attachments are only read when they're opened
             attachments.forEach(attachment -> {
-                emlModel.getAttachmentFromID().put(attachment.getRow().getID(), attachment.getInputStream());
-
                 messagePane.getAttachmentsTable().getItems().add(attachment.getRow());
             });
         }
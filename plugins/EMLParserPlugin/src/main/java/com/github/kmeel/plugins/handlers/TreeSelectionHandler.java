@@ -19,6 +19,7 @@
 package com.github.kmeel.plugins.handlers;
 
 import com.github.kmeel.api.KmeelAPI;
+import com.github.kmeel.api.model.MessageRows;
 import com.github.kmeel.api.model.objects.ID;
 import com.github.kmeel.api.model.objects.MessageRow;
 import com.github.kmeel.api.view.MessagePane;
@@ -27,10 +28,9 @@ import com.github.kmeel.plugins.model.EMLModel;
 import javafx.application.Platform;
 import javafx.scene.Cursor;
 import javafx.scene.control.CheckBoxTreeItem;
+import org.apache.lucene.search.IndexSearcher;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -50,31 +50,41 @@ public class TreeSelectionHandler {
     }
 
     public void handle(KmeelAPI kmeelAPI, CheckBoxTreeItem<Object> treeItem, boolean removed, MessagePane messagePane) {
+        handle(kmeelAPI, Collections.singletonList(treeItem), removed, messagePane);
+    }
+
+    /**
+     * Updates the MessagePane once for all tree items (the union of their folders).
+     */
+    public void handle(KmeelAPI kmeelAPI, List<CheckBoxTreeItem<Object>> treeItems, boolean removed, MessagePane messagePane) {
         EMLModel emlModel = new EMLModel(kmeelAPI);
+        Set<String> folderPaths = new LinkedHashSet<>();
+
+        for (CheckBoxTreeItem<Object> treeItem : treeItems) {
+            if (treeItem.getValue() instanceof TreeObject) folderPaths.add(((TreeObject) treeItem.getValue()).getFolderPath());
+        }
+
+        if (folderPaths.isEmpty()) return;
 
         updateQueue.submit(() -> {
             Platform.runLater(() -> messagePane.getTable().setCursor(Cursor.WAIT));
-            List<MessageRow> rows = new ArrayList<>();
-
-            if (treeItem.getValue() != null && treeItem.getValue() instanceof TreeObject) {
-                TreeObject treeObject = (TreeObject) treeItem.getValue();
-                Set<ID> messagesFromNode = emlModel.getFromFolder(treeObject.getFolderPath());
-
-                if (messagesFromNode != null) {
-                    for (ID id : messagesFromNode) {
-                        if (removed) {
-                            Platform.runLater(() -> {
-                                messagePane.getTable().getItems().removeIf(item -> item.getId().equals(id));
-                            });
-                        } else {
-                            rows.add(emlModel.getMessage(id).getRow());
-                        }
-                    }
-
-                    if (!removed) {
-                        Platform.runLater(() -> messagePane.getTable().getItems().addAll(rows));
-                    }
+            IndexSearcher indexSearcher = kmeelAPI.searcher().acquire();
+
+            try {
+                int[] messagesFromFolders = emlModel.getFromFolders(indexSearcher, folderPaths);
+
+                if (removed) {
+                    Set<ID> removedIDs = new HashSet<>(kmeelAPI.searcher().lookup().getIDs(indexSearcher, messagesFromFolders));
+
+                    Platform.runLater(() -> messagePane.getTable().getItems().removeIf(item -> removedIDs.contains(item.getId())));
+                } else {
+                    // Built from the index, the EML is only parsed when a message is viewed
+                    List<MessageRow> rows = new MessageRows(kmeelAPI).getRows(indexSearcher, messagesFromFolders);
+
+                    Platform.runLater(() -> messagePane.getTable().getItems().addAll(rows));
                 }
+            } finally {
+                kmeelAPI.searcher().release(indexSearcher);
             }
 
             Platform.runLater(() -> messagePane.getTable().setCursor(Cursor.DEFAULT));
@@ -19,75 +19,197 @@
 package com.github.kmeel.plugins.model;
 
 import com.github.kmeel.api.KmeelAPI;
-import com.github.kmeel.plugins.Utils;
+import com.github.kmeel.api.model.FieldLimits;
+import com.github.kmeel.api.model.MessageRows;
+import com.github.kmeel.api.model.NumericFields;
+import com.github.kmeel.api.model.Indexer;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.mail.util.MimeMessageParser;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
 
-import javax.mail.internet.MimeMessage;
-import java.util.Enumeration;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * @author Marten4n6
  */
 @Slf4j
-public class EMLIndexer {
+public class EMLIndexer implements Indexer.CheckpointListener {
+
+    private static final int BATCH_SIZE = 256;
 
     private KmeelAPI kmeelAPI;
+    private final List<Document> batch = new ArrayList<>();
+    private final List<File> batchSources = new ArrayList<>();
+    // Held (shared) while a batch is handed to the IndexWriter, flush takes it exclusively
+    // so the last flush also waits for batches which are still being added
+    private final ReadWriteLock batchLock = new ReentrantReadWriteLock();
 
     public EMLIndexer(KmeelAPI kmeelAPI) {
         this.kmeelAPI = kmeelAPI;
     }
 
     /**
-     * Indexes the specified MimeMessage
+     * @return The record with the body to index, the plaintext body or otherwise the HTML body without tags.
+     */
+    public static EMLRecord extractBody(EMLRecord record) {
+        ParsedMessage message = record.getMessage();
+
+        if (message.getPlainContent() != null) {
+            record.setBody(message.getPlainContent());
+        } else if (message.getHtmlContent() != null) {
+            record.setBody(message.getHtmlContent().replaceAll("<[^>]*>", " "));
+        }
+        return record;
+    }
+
+    /**
+     * The body and headers are added as capped Reader fields.
+     * There is no Contents field, the Searcher searches all text fields by default.
+     *
+     * @return The record with the Lucene document of the ParsedMessage.
+     */
+    public static EMLRecord createDocument(EMLRecord record, FieldLimits fieldLimits) {
+        ParsedMessage message = record.getMessage();
+        String path = record.getPath();
+        String folderPath = record.getFolderPath();
+
+        Document document = new Document();
+        document.add(new StringField("ID", message.getId().getId(), Field.Store.YES));
+
+        // The path to the EML file, used to get the MimeMessage object back
+        document.add(new StringField("Path", path, Field.Store.YES));
+
+        // Used to remove all documents of this source when it changes
+        document.add(new StringField("Source", path, Field.Store.NO));
+
+        // Used to get all EMLs from a specific folder just by searching for the path
+        document.add(new StringField("FolderPath", folderPath, Field.Store.YES));
+
+        if (message.getSubject() != null) {
+            document.add(new TextField("Subject", message.getSubject(), Field.Store.YES));
+        }
+        if (record.getBody() != null) {
+            fieldLimits.add(document, "Body", record.getBody(), path);
+        }
+        if (message.isBodyTruncated()) {
+            // Already cut off while reading the EML
+            fieldLimits.truncated(document, "Body", path);
+        }
+        if (message.getFrom() != null) {
+            document.add(new TextField("From", message.getFrom(), Field.Store.YES));
+        }
+        if (!message.getHeaders().isEmpty()) {
+            fieldLimits.add(document, "Headers", message.getHeaders(), path);
+        }
+
+        NumericFields.addDate(document, NumericFields.RECEIVED, message.getReceivedDate());
+        NumericFields.addDate(document, NumericFields.SENT, message.getSentDate());
+        if (message.getSize() >= 0) {
+            NumericFields.addLong(document, NumericFields.SIZE, message.getSize());
+        }
+
+        MessageRows.add(document,
+                message.getFrom(),
+                message.getTo(),
+                message.getCc(),
+                message.getSubject(),
+                message.getSize(),
+                message.getSentDate()
+        );
+
+        record.setDocument(document);
+        return record;
+    }
+
+    /**
+     * Documents are handed to the IndexWriter in batches,
+     * the source is only marked as indexed once its document has been added.
      */
-    public void indexMessage(MimeMessage message, String path, String folderPath) {
+    public void addDocument(Document document, File source) {
+        batchLock.readLock().lock();
+
         try {
-            MimeMessageParser parser = new MimeMessageParser(message).parse();
-            Document document = new Document();
-            StringBuilder searchableText = new StringBuilder();
-            document.add(new StringField("ID", Utils.getID(message).getId(), Field.Store.YES));
-            searchableText.append(" ").append(Utils.getID(message));
-
-            // The path to the EML file, used to get the MimeMessage object back
-            document.add(new StringField("Path", path, Field.Store.YES));
-            searchableText.append(" ").append(path);
-
-            // Used to get all EMLs from a specific folder just by searching for the path
-            document.add(new StringField("FolderPath", folderPath, Field.Store.YES));
-            searchableText.append(" ").append(folderPath);
-
-            if (parser.getSubject() != null) {
-                document.add(new TextField("Subject", parser.getSubject(), Field.Store.YES));
-                searchableText.append(" ").append(parser.getSubject());
+            List<Document> fullBatch = null;
+            List<File> fullBatchSources = null;
+
+            synchronized (batch) {
+                batch.add(document);
+                batchSources.add(source);
+
+                if (batch.size() >= BATCH_SIZE) {
+                    fullBatch = new ArrayList<>(batch);
+                    fullBatchSources = new ArrayList<>(batchSources);
+                    batch.clear();
+                    batchSources.clear();
+                }
             }
-            if (parser.getPlainContent() != null) {
-                document.add(new TextField("Body", parser.getPlainContent(), Field.Store.NO));
-                searchableText.append(" ").append(parser.getPlainContent());
+
+            if (fullBatch != null) {
+                addBatch(fullBatch, fullBatchSources);
             }
-            if (parser.getFrom() != null) {
-                document.add(new TextField("From", parser.getFrom(), Field.Store.YES));
-                searchableText.append(" ").append(parser.getFrom());
+        } finally {
+            batchLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the remaining documents to the IndexWriter, called on checkpoints and once all EMLs are indexed.
+     */
+    @Override
+    public void flush() {
+        // Waits for batches which are still being added
+        batchLock.writeLock().lock();
+
+        try {
+            List<Document> remainingBatch;
+            List<File> remainingSources;
+
+            synchronized (batch) {
+                remainingBatch = new ArrayList<>(batch);
+                remainingSources = new ArrayList<>(batchSources);
+                batch.clear();
+                batchSources.clear();
             }
-            if (message.getAllHeaderLines() != null) {
-                StringBuilder headers = new StringBuilder();
-                Enumeration allHeaderLines = message.getAllHeaderLines();
-                while (allHeaderLines.hasMoreElements()) {
-                    headers.append(allHeaderLines.nextElement()).append("\n");
-                }
 
-                document.add(new TextField("Headers", headers.toString(), Field.Store.NO));
-                searchableText.append(" ").append(headers.toString());
+            if (!remainingBatch.isEmpty()) {
+                addBatch(remainingBatch, remainingSources);
             }
+        } finally {
+            batchLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Lucene adds a batch as one block, so if a single document fails the whole batch is dropped.
+     * In that case the documents are added one by one and only the sources of added documents are marked as indexed,
+     * the others are indexed again on the next ingest.
+     */
+    private void addBatch(List<Document> documents, List<File> sources) {
+        IndexWriter indexWriter = kmeelAPI.indexer().getIndexWriter();
+
+        try {
+            indexWriter.addDocuments(documents);
+            sources.forEach(source -> kmeelAPI.sources().setIndexed(source));
+            return;
+        } catch (IOException | RuntimeException ex) {
+            log.error("Failed to add a batch of " + documents.size() + " EMLs, adding them one by one.", ex);
+        }
 
-            document.add(new TextField("Contents", searchableText.toString(), Field.Store.NO));
-            kmeelAPI.indexer().getIndexWriter().addDocument(document);
-        } catch (Exception ex) {
-            log.warn(ex.getMessage() + ": " + path);
+        for (int i = 0; i < documents.size(); i++) {
+            try {
+                indexWriter.addDocument(documents.get(i));
+                kmeelAPI.sources().setIndexed(sources.get(i));
+            } catch (IOException | RuntimeException ex) {
+                log.error("Failed to index " + sources.get(i).getPath(), ex);
+            }
         }
     }
 }
@@ -24,24 +24,14 @@ import com.github.kmeel.plugins.Utils;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
-import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.mail.util.MimeMessageParser;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopDocs;
-
-import javax.mail.MessagingException;
-import javax.mail.internet.MimeMessage;
+import org.apache.lucene.search.IndexSearcher;
+
+import javax.activation.DataSource;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * @author Marten4n6
@@ -51,49 +41,59 @@ public class EMLModel {
 
     private KmeelAPI kmeelAPI;
 
-    private @Getter HashMap<ID, InputStream> attachmentFromID = new HashMap<>();
-
     public EMLModel(KmeelAPI kmeelAPI) {
         this.kmeelAPI = kmeelAPI;
     }
 
     /**
-     * @return The MimeMessage from the specified ID
+     * The decoded content is cached by the case, see getCachedMessage.
+     *
+     * @return The ParsedMessage from the specified ID
      */
-    public MimeMessage getFromID(ID id) {
+    public ParsedMessage getParsedMessage(ID id) {
         try {
-            Query query = new TermQuery(new Term("ID", id.getId()));
-            ScoreDoc[] hits = kmeelAPI.searcher().search(query, 1).scoreDocs;
-            Document document = kmeelAPI.searcher().getDocument(hits[0].doc);
-
-            return new MimeMessage(null, new FileInputStream(new File(document.get("Path"))));
+            return ParsedMessage.parse(new File(kmeelAPI.searcher().lookup().getValue(id, "Path")));
         } catch (Exception ex) {
             return null;
         }
     }
 
     /**
-     * @return A list of message IDs from the specified folder
+     * @return The (cached) decoded body, headers and attachments of the message, null if it can't be parsed.
      */
-    public Set<ID> getFromFolder(String folderPath) {
-        Set<ID> messageIDs = new HashSet<>();
-
-        try {
-            Query query = new TermQuery(new Term("FolderPath", folderPath));
-            TopDocs topDocs = kmeelAPI.searcher().search(query, Integer.MAX_VALUE);
-            ScoreDoc[] hits = topDocs.scoreDocs;
+    private CachedMessage getCachedMessage(ID id) {
+        return kmeelAPI.messageCache().get(id, (key) -> {
+            ParsedMessage parsedMessage = getParsedMessage(key);
+
+            if (parsedMessage == null) return null;
+
+            List<CachedAttachment> attachments = new ArrayList<>();
+            List<DataSource> dataSources = parsedMessage.getAttachments();
+
+            for (int i = 0; i < dataSources.size(); i++) {
+                DataSource attachment = dataSources.get(i);
+
+                attachments.add(new CachedAttachment(
+                        i,
+                        attachment.getName(),
+                        attachment.getContentType(),
+                        Utils.humanReadableByteCount(parsedMessage.getSize()),
+                        null,
+                        null,
+                        Utils.getID(attachment)
+                ));
+            }
 
-            for (int i = 0; i < hits.length; i++) {
-                Document document = kmeelAPI.searcher().getDocument(hits[i].doc);
+            String body = parsedMessage.getBody();
+            return new CachedMessage(body != null ? body : "", parsedMessage.getHeaders(), attachments);
+        });
+    }
 
-                if (document.get("FolderPath").equals(folderPath)) {
-                    messageIDs.add(new ID(document.get("ID")));
-                }
-            }
-        } catch (IOException ex) {
-            log.error(ex.getMessage(), ex);
-        }
-        return messageIDs;
+    /**
+     * @return The (sorted) document IDs in the searcher of the messages from all specified folders
+     */
+    public int[] getFromFolders(IndexSearcher indexSearcher, Collection<String> folderPaths) {
+        return kmeelAPI.searcher().lookup().getDocIDs(indexSearcher, "FolderPath", folderPaths);
     }
 
     /**
@@ -101,140 +101,60 @@ public class EMLModel {
      * @see Message
      */
     public Message getMessage(ID id) {
-        if (getFromID(id) == null) return null;
+        // Indexed by this parser, the EML itself is only parsed when needed
+        if (kmeelAPI.searcher().lookup().getValue(id, "Path") == null) return null;
 
         return new Message() {
+            // Only parsed when an attachment is opened
+            private ParsedMessage parsedMessage;
+
             @Override
             public MessageRow getRow() {
-                try {
-                    MimeMessage message = new MimeMessage(getFromID(id));
-                    MimeMessageParser parser = new MimeMessageParser(message).parse();
-
-                    return new MessageRow(
-                            kmeelAPI,
-                            id,
-                            parser.getFrom(),
-                            (parser.getTo().isEmpty() ? "" : parser.getCc().stream().map(Object::toString).collect(Collectors.joining(", "))),
-                            Utils.humanReadableByteCount(message.getSize()),
-                            message.getSubject(),
-                            (parser.getCc().isEmpty() ? "" : parser.getCc().stream().map(Object::toString).collect(Collectors.joining(", "))),
-                            new SimpleObjectProperty<>(message.getSentDate()),
-                            new SimpleStringProperty(kmeelAPI.tags().get(id)),
-                            new SimpleBooleanProperty(kmeelAPI.bookmarks().isBookmark(id)));
-                } catch (Exception ex) {
-                    log.error(ex.getMessage(), ex);
-                }
-                return null;
+                ParsedMessage parsedMessage = getParsedMessage(id);
+
+                return new MessageRow(
+                        kmeelAPI,
+                        id,
+                        parsedMessage.getFrom(),
+                        parsedMessage.getTo(),
+                        Utils.humanReadableByteCount(parsedMessage.getSize()),
+                        parsedMessage.getSubject(),
+                        parsedMessage.getCc(),
+                        new SimpleObjectProperty<>(parsedMessage.getSentDate()),
+                        new SimpleStringProperty(kmeelAPI.tags().get(id)),
+                        new SimpleBooleanProperty(kmeelAPI.bookmarks().isBookmark(id)));
             }
 
             @Override
             public String getBody() {
-                try {
-                    MimeMessage message = new MimeMessage(getFromID(id));
-                    MimeMessageParser parser = new MimeMessageParser(message).parse();
-
-                    if (parser.getHtmlContent() != null) {
-                        return parser.getHtmlContent();
-                    } else {
-                        return parser.getPlainContent();
-                    }
-                } catch (Exception ex) {
-                    log.error(ex.getMessage(), ex);
-                }
-                return null;
+                CachedMessage cachedMessage = getCachedMessage(id);
+                return cachedMessage != null ? cachedMessage.getBody() : "";
             }
 
             @Override
             public String getHeaders() {
-                try {
-                    MimeMessage message = new MimeMessage(getFromID(id));
-                    Enumeration headersEnumeration = message.getAllHeaderLines();
-                    StringBuilder headers = new StringBuilder();
-
-                    while (headersEnumeration.hasMoreElements()) {
-                        headers.append(headersEnumeration.nextElement().toString()).append("\n");
-                    }
-
-                    return headers.toString();
-                } catch (MessagingException ex) {
-                    log.error(ex.getMessage(), ex);
-                }
-
-                return null;
+                CachedMessage cachedMessage = getCachedMessage(id);
+                return cachedMessage != null ? cachedMessage.getHeaders() : "";
             }
 
             @Override
             public List<MessageAttachment> getAttachments() {
-                try {
-                    List<MessageAttachment> attachments = new ArrayList<>();
-
-                    MimeMessage message = new MimeMessage(getFromID(id));
-                    MimeMessageParser parser = new MimeMessageParser(message).parse();
-
-                    parser.getAttachmentList().forEach(attachment -> {
-                        attachments.add(new MessageAttachment() {
-                            @Override
-                            public String getAttachmentName() {
-                                return attachment.getName();
-                            }
-
-                            @Override
-                            public InputStream getInputStream() {
-                                try {
-                                    return attachment.getInputStream();
-                                } catch (IOException ex) {
-                                    log.error(ex.getMessage());
-                                    return null;
-                                }
-                            }
-
-                            @Override
-                            public AttachmentRow getRow() {
-                                return new AttachmentRow() {
-                                    @Override
-                                    public String getAttachmentName() {
-                                        return attachment.getName();
-                                    }
-
-                                    @Override
-                                    public String getContentType() {
-                                        return attachment.getContentType();
-                                    }
-
-                                    @Override
-                                    public String getSize() {
-                                        try {
-                                            return Utils.humanReadableByteCount(message.getSize());
-                                        } catch (MessagingException ex) {
-                                            log.warn(ex.getMessage());
-                                            return null;
-                                        }
-                                    }
-
-                                    @Override
-                                    public String getCreationTime() {
-                                        return null;
-                                    }
-
-                                    @Override
-                                    public String getModificationTime() {
-                                        return null;
-                                    }
-
-                                    @Override
-                                    public ID getID() {
-                                        return Utils.getID(attachment);
-                                    }
-                                };
-                            }
-                        });
-                    });
+                List<MessageAttachment> attachments = new ArrayList<>();
+                CachedMessage cachedMessage = getCachedMessage(id);
+
+                if (cachedMessage == null) return attachments;
 
-                    return attachments;
-                } catch (Exception ex) {
-                    log.error(ex.getMessage(), ex);
+                for (CachedAttachment cachedAttachment : cachedMessage.getAttachments()) {
+                    attachments.add(new LazyAttachment(kmeelAPI, id, cachedAttachment.getIndex(), cachedAttachment) {
+                        @Override
+                        protected InputStream openStream() throws IOException {
+                            if (parsedMessage == null) parsedMessage = getParsedMessage(id);
+
+                            return parsedMessage != null ? parsedMessage.getAttachments().get(cachedAttachment.getIndex()).getInputStream() : null;
+                        }
+                    });
                 }
-                return null;
+                return attachments;
             }
         };
     }
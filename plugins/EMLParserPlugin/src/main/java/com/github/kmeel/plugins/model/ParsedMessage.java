@@ -0,0 +1,238 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.plugins.model;
+
+import com.github.kmeel.api.model.objects.ID;
+import com.github.kmeel.api.utils.BoundedReader;
+import com.github.kmeel.plugins.Utils;
+import lombok.Getter;
+import org.apache.commons.mail.util.MimeMessageParser;
+
+import javax.activation.DataSource;
+import javax.mail.*;
+import javax.mail.internet.ContentType;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MailDateFormat;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeUtility;
+import javax.mail.util.SharedFileInputStream;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * @author Marten4n6
+ *         Everything needed from an EML, created by parsing the file once.
+ *         Used by both the EMLIndexer and the EMLModel.
+ */
+@Getter
+public class ParsedMessage {
+
+    private final ID id;
+    private final String subject;
+    private final String from;
+    private final String to;
+    private final String cc;
+    private final Date sentDate;
+    private final Date receivedDate;
+    private final int size;
+    private final String plainContent;
+    private final String htmlContent;
+    private final String headers;
+    private final List<DataSource> attachments;
+    private final boolean isBodyTruncated;
+
+    private ParsedMessage(MimeMessage message, MimeMessageParser parser) throws Exception {
+        id = Utils.getID(message);
+        subject = parser.getSubject();
+        from = parser.getFrom();
+        to = joinAddresses(parser.getTo());
+        cc = joinAddresses(parser.getCc());
+        sentDate = message.getSentDate();
+        receivedDate = getReceivedDate(message);
+        size = message.getSize();
+        plainContent = parser.getPlainContent();
+        htmlContent = parser.getHtmlContent();
+        attachments = Collections.unmodifiableList(new ArrayList<>(parser.getAttachmentList()));
+        headers = getHeaders(message);
+        isBodyTruncated = false;
+    }
+
+    /**
+     * Only the plain content (or the HTML content if there is none) is read, without attachments.
+     */
+    private ParsedMessage(MimeMessage message, int maxBodyChars) throws Exception {
+        Address[] fromAddresses = message.getFrom();
+        AtomicBoolean isTruncated = new AtomicBoolean(false);
+
+        id = Utils.getID(message);
+        subject = message.getSubject();
+        // Only the address (like MimeMessageParser#getFrom), toString would return the encoded personal name
+        from = fromAddresses != null && fromAddresses.length > 0 && fromAddresses[0] instanceof InternetAddress
+                ? ((InternetAddress) fromAddresses[0]).getAddress() : null;
+        to = joinAddresses(message.getRecipients(Message.RecipientType.TO));
+        cc = joinAddresses(message.getRecipients(Message.RecipientType.CC));
+        sentDate = message.getSentDate();
+        receivedDate = getReceivedDate(message);
+        size = message.getSize();
+
+        Part plainPart = findTextPart(message, "text/plain");
+        Part htmlPart = plainPart == null ? findTextPart(message, "text/html") : null;
+
+        plainContent = plainPart != null ? readText(plainPart, maxBodyChars, isTruncated) : null;
+        htmlContent = htmlPart != null ? readText(htmlPart, maxBodyChars, isTruncated) : null;
+        attachments = Collections.emptyList();
+        headers = getHeaders(message);
+        isBodyTruncated = isTruncated.get();
+    }
+
+    /**
+     * Reads and parses the EML file.
+     *
+     * @throws Exception if the file couldn't be read or parsed.
+     */
+    public static ParsedMessage parse(File file) throws Exception {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            MimeMessage message = new MimeMessage(null, inputStream);
+
+            return new ParsedMessage(message, new MimeMessageParser(message).parse());
+        }
+    }
+
+    /**
+     * Reads the EML for indexing, the text parts are streamed from the file and cut off
+     * after maxBodyChars characters, so the size of the message doesn't matter.
+     * Attachments aren't read and the HTML content is only read if there is no plain content.
+     *
+     * @throws Exception if the file couldn't be read or parsed.
+     */
+    public static ParsedMessage parse(File file, int maxBodyChars) throws Exception {
+        // Parts are read from the file when needed instead of loading the whole file
+        try (SharedFileInputStream inputStream = new SharedFileInputStream(file)) {
+            MimeMessage message = new MimeMessage(null, inputStream);
+
+            return new ParsedMessage(message, maxBodyChars);
+        }
+    }
+
+    /**
+     * @return The HTML content if there is any, otherwise the plain content.
+     */
+    public String getBody() {
+        return htmlContent != null ? htmlContent : plainContent;
+    }
+
+    /**
+     * @return The addresses with decoded (RFC 2047) personal names, so non-ASCII names can be searched.
+     */
+    private static String joinAddresses(List<Address> addresses) {
+        return addresses.stream().map(address -> {
+            return address instanceof InternetAddress ? ((InternetAddress) address).toUnicodeString() : address.toString();
+        }).collect(Collectors.joining(", "));
+    }
+
+    private static String joinAddresses(Address[] addresses) {
+        return addresses != null ? joinAddresses(Arrays.asList(addresses)) : "";
+    }
+
+    /**
+     * The topmost Received header is added by the last server, so its date is when the message arrived.
+     *
+     * @return The date the message was received, the sent date if there is no (valid) Received header.
+     */
+    private static Date getReceivedDate(MimeMessage message) throws MessagingException {
+        String[] receivedHeaders = message.getHeader("Received");
+
+        if (receivedHeaders != null && receivedHeaders.length > 0) {
+            String receivedHeader = MimeUtility.unfold(receivedHeaders[0]);
+            int dateIndex = receivedHeader.lastIndexOf(';');
+
+            if (dateIndex != -1) {
+                try {
+                    return new MailDateFormat().parse(receivedHeader.substring(dateIndex + 1).trim());
+                } catch (java.text.ParseException ex) {
+                    // Fall back to the sent date
+                }
+            }
+        }
+        return message.getSentDate();
+    }
+
+    private static String getHeaders(MimeMessage message) throws MessagingException {
+        StringBuilder headers = new StringBuilder();
+        Enumeration allHeaderLines = message.getAllHeaderLines();
+
+        while (allHeaderLines.hasMoreElements()) {
+            headers.append(allHeaderLines.nextElement()).append("\n");
+        }
+        return headers.toString();
+    }
+
+    /**
+     * @return The first part of the type which isn't an attachment, otherwise null.
+     */
+    private static Part findTextPart(Part part, String mimeType) throws MessagingException, IOException {
+        if (part.isMimeType(mimeType) && !Part.ATTACHMENT.equalsIgnoreCase(part.getDisposition())) {
+            return part;
+        }
+
+        if (part.isMimeType("multipart/*")) {
+            Multipart multipart = (Multipart) part.getContent();
+
+            for (int i = 0; i < multipart.getCount(); i++) {
+                Part textPart = findTextPart(multipart.getBodyPart(i), mimeType);
+
+                if (textPart != null) return textPart;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The decoded text of the part, at most maxChars characters.
+     */
+    private static String readText(Part part, int maxChars, AtomicBoolean isTruncated) throws MessagingException, IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+
+        try (Reader reader = new BoundedReader(new InputStreamReader(part.getInputStream(), getCharset(part)), maxChars, () -> isTruncated.set(true))) {
+            while ((read = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, read);
+            }
+        }
+        return text.toString();
+    }
+
+    private static Charset getCharset(Part part) throws MessagingException {
+        String charset = new ContentType(part.getContentType()).getParameter("charset");
+
+        try {
+            return charset != null ? Charset.forName(MimeUtility.javaCharset(charset)) : StandardCharsets.US_ASCII;
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException ex) {
+            return StandardCharsets.ISO_8859_1;
+        }
+    }
+}
@@ -28,7 +28,8 @@ import java.util.concurrent.CountDownLatch;
  */
 public class LoadingTask extends Task {
 
-    private CountDownLatch countDownLatch;
+    // Created here since done may be called before the loading view starts this task
+    private final CountDownLatch countDownLatch = new CountDownLatch(1);
 
     public LoadingTask() {
         updateTitle("EMLParser");
@@ -36,7 +37,6 @@ public class LoadingTask extends Task {
 
     @Override
     protected Object call() throws Exception {
-        countDownLatch = new CountDownLatch(1);
         countDownLatch.await(); // Just wait until LoadingTask::done is called
         return null;
     }
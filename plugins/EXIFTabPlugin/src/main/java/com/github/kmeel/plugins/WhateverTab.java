@@ -35,6 +35,7 @@ import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
@@ -136,10 +137,10 @@ class WhateverTab {
                 MessageAttachment selectedAttachment = comboBox.getSelectionModel().getSelectedItem();
                 File outputFile = new File(OSUtils.getTempPath() + "EXIF" + File.separator + UUID.randomUUID().toString().replaceAll("-", ""));
 
-                try {
+                try (InputStream inputStream = selectedAttachment.getInputStream()) {
                     if (outputFile.exists()) Files.delete(Paths.get(outputFile.getPath()));
 
-                    FileUtils.copyInputStreamToFile(selectedAttachment.getInputStream(), outputFile);
+                    if (inputStream != null) FileUtils.copyInputStreamToFile(inputStream, outputFile);
                     outputFile.deleteOnExit();
                 } catch (IOException ex) {
                     log.error(ex.getMessage(), ex);
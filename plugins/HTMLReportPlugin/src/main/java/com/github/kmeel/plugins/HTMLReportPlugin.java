@@ -39,6 +39,7 @@ import java.awt.*;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.List;
@@ -100,7 +101,9 @@ public class HTMLReportPlugin extends Plugin {
                             Path attachmentPath = Paths.get(attachmentDirectory.getPath() + File.separator + attachment.getAttachmentName().replaceAll("[^a-zA-Z0-9.-]", "_"));
 
                             attachmentDirectory.mkdir();
-                            Files.copy(attachment.getInputStream(), attachmentPath, StandardCopyOption.REPLACE_EXISTING);
+                            try (InputStream inputStream = attachment.getInputStream()) {
+                                if (inputStream != null) Files.copy(inputStream, attachmentPath, StandardCopyOption.REPLACE_EXISTING);
+                            }
 
                             html.append(attachment.getAttachmentName()).append("<br/>");
                         } catch (IOException ex) {
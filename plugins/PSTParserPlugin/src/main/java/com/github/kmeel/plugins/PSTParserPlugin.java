@@ -19,6 +19,10 @@
 package com.github.kmeel.plugins;
 
 import com.github.kmeel.api.KmeelAPI;
+import com.github.kmeel.api.model.FieldLimits;
+import com.github.kmeel.api.model.PipelineStage;
+import com.github.kmeel.api.model.Settings;
+import com.github.kmeel.api.model.Sources;
 import com.github.kmeel.api.custom.DefaultContextMenuItems;
 import com.github.kmeel.api.model.objects.ID;
 import com.github.kmeel.api.model.objects.Message;
@@ -33,15 +37,15 @@ import com.github.kmeel.plugins.handlers.MessageClickedHandler;
 import com.github.kmeel.plugins.handlers.TreeSelectionHandler;
 import com.github.kmeel.plugins.model.PSTIndexer;
 import com.github.kmeel.plugins.model.PSTModel;
-import com.github.kmeel.plugins.model.object.PSTFileID;
+import com.github.kmeel.plugins.model.object.PSTRecord;
 import com.github.kmeel.plugins.model.object.TreeObject;
 import com.github.kmeel.plugins.view.LoadingTask;
 import com.pff.*;
 import javafx.application.Platform;
-import javafx.concurrent.Task;
 import javafx.scene.control.CheckBoxTreeItem;
 import javafx.scene.control.ContextMenu;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.document.Document;
 import ro.fortsoft.pf4j.Extension;
 import ro.fortsoft.pf4j.Plugin;
 import ro.fortsoft.pf4j.PluginWrapper;
@@ -49,10 +53,9 @@ import ro.fortsoft.pf4j.PluginWrapper;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -70,12 +73,18 @@ public class PSTParserPlugin extends Plugin {
     public static class PSTParser implements Parser, MessageListener, DefaultContextMenuItems, PluginableFileTree {
 
         private static KmeelAPI kmeelAPI;
-        private static PSTIndexer pstIndexer;
 
-        private static boolean isParsed;
         private static boolean isTreePluginEnabled;
 
-        private static final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        // The ingestion scheduler limits how many PSTs are parsed at once (see getMaxConcurrentFiles)
+        private static final ExecutorService executorService = Executors.newCachedThreadPool();
+
+        // Shared by all PSTs, reads folders (or parts of large folders) in parallel
+        private static ExecutorService folderExecutorService;
+        private static final int FOLDER_CHUNK_SIZE = 500;
+
+        // Shared by all PSTs, body extraction -> document building -> index writing
+        private static PipelineStage<PSTRecord, PSTRecord> pipeline;
 
         private static LoadingView loadingView;
 
@@ -96,76 +105,106 @@ public class PSTParserPlugin extends Plugin {
         @Override
         public void setup(KmeelAPI api, LoadingView loadingThing) {
             kmeelAPI = api;
-            pstIndexer = new PSTIndexer(kmeelAPI);
 
-            isParsed = Boolean.parseBoolean(kmeelAPI.settings().get(getName() + "-Parsed"));
-            isTreePluginEnabled = kmeelAPI.plugins().getPluginManager().getExtensions(PluginableFileTree.class).size() != 0;
+            isTreePluginEnabled = !KmeelAPI.isHeadless() && kmeelAPI.plugins().getPluginManager().getExtensions(PluginableFileTree.class).size() != 0;
 
             loadingView = loadingThing;
+
+            // Nothing is being parsed during setup, so the stages can be replaced with the current settings
+            if (folderExecutorService != null) folderExecutorService.shutdown();
+            if (pipeline != null) pipeline.shutdown();
+
+            Settings settings = kmeelAPI.settings();
+            int processors = Runtime.getRuntime().availableProcessors();
+            int queueSize = settings.getInt("PipelineQueueSize", 1000);
+
+            PipelineStage<Document, Void> indexStage = new PipelineStage<>("PST index", settings.getInt("IndexThreads", 2), queueSize, (document) -> {
+                kmeelAPI.indexer().getIndexWriter().addDocument(document);
+                return null;
+            }, null);
+            FieldLimits fieldLimits = kmeelAPI.fieldLimits();
+
+            PipelineStage<PSTRecord, Document> documentStage = new PipelineStage<>("PST documents", settings.getInt("DocumentThreads", processors), queueSize, (record) -> {
+                return PSTIndexer.createDocument(record, fieldLimits);
+            }, indexStage);
+
+            pipeline = new PipelineStage<>("PST bodies", settings.getInt("BodyThreads", processors), queueSize, PSTIndexer::extractBody, documentStage);
+            folderExecutorService = Executors.newFixedThreadPool(Math.max(1, settings.getInt("ReadThreads", processors)));
+        }
+
+        @Override
+        public int getMaxConcurrentFiles() {
+            return Runtime.getRuntime().availableProcessors();
         }
 
         @Override
         public void parseFile(File file, int totalFiles, ActionListener finishedListener) {
-            Task<CheckBoxTreeItem<TreeObject>> task = new Task<CheckBoxTreeItem<TreeObject>>() {
+            // Not a JavaFX Task, so this also works without the FX toolkit (command-line mode)
+            Callable<CheckBoxTreeItem<TreeObject>> task = new Callable<CheckBoxTreeItem<TreeObject>>() {
                 private CheckBoxTreeItem<TreeObject> rootTreeItem;
+                private PSTIndexer pstIndexer = new PSTIndexer(kmeelAPI, file);
+                private boolean isIndexed = kmeelAPI.sources().isIndexed(file);
+
+                // PSTFile isn't thread-safe, so every folder worker reads from its own handle
+                private final Map<Thread, PSTFile> pstFileFromWorker = new ConcurrentHashMap<>();
+                private final AtomicBoolean hasFailedChunk = new AtomicBoolean(false);
+
+                // Counts down once every object of this PST left the pipeline
+                private final CountDownLatch indexedLatch = new CountDownLatch(1);
+                private final PipelineStage.Tracker fileTracker = new PipelineStage.Tracker(indexedLatch::countDown);
 
                 private LoadingTask loadingTask;
                 private AtomicInteger messageAmount = new AtomicInteger(0);
                 private AtomicInteger finishedAmount = new AtomicInteger(0);
+                private volatile boolean isMessageAmountFinal = false;
 
                 @Override
-                protected CheckBoxTreeItem<TreeObject> call() throws Exception {
+                public CheckBoxTreeItem<TreeObject> call() throws Exception {
+                    PSTFile walkerFile = null;
+
                     try {
                         PSTFile pstFile = new PSTFile(file);
+                        walkerFile = pstFile;
 
                         if (pstFile.getRootFolder() != null) {
                             if (isTreePluginEnabled) {
                                 rootTreeItem = new CheckBoxTreeItem<>(new TreeObject(file.getName(), null));
                             }
 
-                            if (!isParsed) {
+                            if (!isIndexed && !KmeelAPI.isHeadless()) {
                                 loadingTask = new LoadingTask();
 
                                 Platform.runLater(() -> {
-                                    loadingTask.updateMessage("Getting message amount...");
-                                    loadingTask.updateProgress(0, totalFiles);
+                                    loadingTask.updateMessage("Indexing: " + file.getName());
                                     loadingView.addTask(loadingTask);
                                 });
-
-                                calculateMessageAmount(pstFile.getRootFolder()); //Update the messageAmount
-                                loadingTask.updateMessage("Indexing: " + file.getName());
                             }
 
-                            PSTModel.getInstance().getFileFromHash().put(new PSTFileID(pstFile).getId(), pstFile);
+                            // Messages are viewed while the walk is still running, the viewer gets its own handle
+                            PSTModel.getInstance().setFile(new PSTFile(file));
 
+                            // Folders are indexed while the rest of the tree is still being walked
                             for (PSTFolder subFolder : pstFile.getRootFolder().getSubFolders()) {
                                 extractSubFolder(pstFile, subFolder, file.getName() + "/", rootTreeItem);
                             }
+                            isMessageAmountFinal = true;
+
+                            fileTracker.close();
+                            indexedLatch.await();
+
+                            if (!isIndexed && !hasFailedChunk.get()) kmeelAPI.sources().setIndexed(file);
                         }
                     } catch (IOException | PSTException ex) {
                         log.error(ex.getMessage(), ex);
+                    } finally {
+                        closeWorkerFiles();
+                        closeFile(walkerFile);
                     }
 
                     if (loadingTask != null) loadingTask.done();
                     return rootTreeItem;
                 }
 
-                private void calculateMessageAmount(PSTFolder folder) {
-                    try {
-                        if (folder.getContentCount() != 0 && folder.getNodeType() != 3) {
-                            messageAmount.getAndAdd(folder.getContentCount());
-                        }
-
-                        if (folder.getNodeType() != 3) {
-                            for (PSTFolder pstFolder : folder.getSubFolders()) {
-                                calculateMessageAmount(pstFolder);
-                            }
-                        }
-                    } catch (IOException | PSTException ex) {
-                        log.error(ex.getMessage(), ex);
-                    }
-                }
-
                 private void extractSubFolder(PSTFile pstFile, PSTFolder subFolder, String folderPath, CheckBoxTreeItem<TreeObject> treeItem) {
                     try {
                         String newFolderPath = folderPath + subFolder.getDisplayName();
@@ -179,32 +218,30 @@ public class PSTParserPlugin extends Plugin {
                             treeItem.getChildren().add(subFolderTreeItem);
                         }
 
-                        if (!isParsed) {
-                            if (subFolder.getContentCount() > 0) {
-                                for (Integer descriptorID : subFolder.getChildDescriptorNodes()) {
-                                    try {
-                                        // Do stuff with the PSTObject here...
-                                        PSTObject pstObject = PSTObject.detectAndLoadPSTObject(pstFile, descriptorID);
+                        if (!isIndexed && subFolder.getContentCount() > 0) {
+                            List<Integer> descriptorIDs = new ArrayList<>(subFolder.getChildDescriptorNodes());
 
-                                        if (pstObject instanceof PSTAppointment) {
-                                            PSTAppointment appointment = (PSTAppointment) pstObject;
+                            messageAmount.addAndGet(descriptorIDs.size());
 
-                                            pstIndexer.index(pstFile, subFolder, newFolderPath, appointment);
-                                        } else if (pstObject instanceof PSTContact) {
-                                            PSTContact contact = (PSTContact) pstObject;
+                            // Large folders are split up so multiple workers can extract them
+                            for (int i = 0; i < descriptorIDs.size(); i += FOLDER_CHUNK_SIZE) {
+                                List<Integer> chunk = descriptorIDs.subList(i, Math.min(i + FOLDER_CHUNK_SIZE, descriptorIDs.size()));
+                                long folderDescriptorID = subFolder.getDescriptorNodeId();
+                                String part = folderDescriptorID + ":" + i;
 
-                                            pstIndexer.index(pstFile, subFolder, newFolderPath, contact);
-                                        } else {
-                                            PSTMessage message = (PSTMessage) pstObject;
+                                if (kmeelAPI.sources().isPartIndexed(file, part)) {
+                                    // Already indexed before the ingest was interrupted
+                                    finishedAmount.addAndGet(chunk.size());
+                                    continue;
+                                }
 
-                                            pstIndexer.index(pstFile, subFolder, newFolderPath, message);
-                                        }
+                                Runnable chunkFinished = fileTracker.add();
 
-                                        finishedAmount.incrementAndGet();
-                                        loadingTask.updateProgress(finishedAmount.get(), messageAmount.get());
-                                    } catch (PSTException ex) {
-                                        log.debug(ex.getMessage());
-                                    }
+                                try {
+                                    folderExecutorService.execute(() -> extractFolderChunk(folderDescriptorID, newFolderPath, part, chunk, chunkFinished));
+                                } catch (RejectedExecutionException ex) {
+                                    hasFailedChunk.set(true);
+                                    chunkFinished.run();
                                 }
                             }
                         }
@@ -216,25 +253,120 @@ public class PSTParserPlugin extends Plugin {
                             }
                         }
                     } catch (IOException | PSTException ex) {
+                        // The messages of this folder are skipped, so the PST isn't fully indexed
+                        log.error(ex.getMessage(), ex);
+                        hasFailedChunk.set(true);
+                    }
+                }
+
+                /**
+                 * Reads the objects of a folder using the PSTFile handle of the current worker,
+                 * the records are passed on to the pipeline which indexes them.
+                 * The part is marked as indexed once all of its records left the pipeline.
+                 */
+                private void extractFolderChunk(long folderDescriptorID, String folderPath, String part, List<Integer> descriptorIDs, Runnable chunkFinished) {
+                    String sourceRange = Sources.getSourceRange(file, part);
+                    AtomicBoolean isChunkFailed = new AtomicBoolean(false);
+
+                    PipelineStage.Tracker chunkTracker = new PipelineStage.Tracker(() -> {
+                        if (!isChunkFailed.get()) kmeelAPI.sources().setPartIndexed(file, part);
+                        chunkFinished.run();
+                    });
+
+                    try {
+                        PSTFile pstFile = getWorkerFile();
+                        PSTFolder folder = (PSTFolder) PSTObject.detectAndLoadPSTObject(pstFile, folderDescriptorID);
+
+                        for (Integer descriptorID : descriptorIDs) {
+                            PSTRecord record = null;
+
+                            try {
+                                PSTObject pstObject = PSTObject.detectAndLoadPSTObject(pstFile, descriptorID);
+
+                                record = pstIndexer.read(pstFile, folder, folderPath, sourceRange, pstObject);
+                            } catch (PSTException ex) {
+                                log.debug(ex.getMessage());
+                            }
+
+                            if (record == null) {
+                                updateProgress();
+                                continue;
+                            }
+
+                            Runnable objectFinished = chunkTracker.add();
+
+                            // Blocks while the pipeline is full
+                            pipeline.submit(record, () -> {
+                                updateProgress();
+                                objectFinished.run();
+                            }, () -> {
+                                // The message isn't in the index, so the chunk is extracted again on the next ingest
+                                isChunkFailed.set(true);
+                                hasFailedChunk.set(true);
+                            });
+                        }
+                    } catch (IOException | PSTException ex) {
+                        isChunkFailed.set(true);
+                        hasFailedChunk.set(true);
+                        log.error(ex.getMessage(), ex);
+                    } catch (InterruptedException ex) {
+                        isChunkFailed.set(true);
+                        hasFailedChunk.set(true);
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        chunkTracker.close();
+                    }
+                }
+
+                private void updateProgress() {
+                    if (loadingTask == null) return;
+
+                    loadingTask.updateProgress(file.getName(), finishedAmount.incrementAndGet(), messageAmount.get(), isMessageAmountFinal);
+                }
+
+                private PSTFile getWorkerFile() throws IOException, PSTException {
+                    PSTFile pstFile = pstFileFromWorker.get(Thread.currentThread());
+
+                    if (pstFile == null) {
+                        pstFile = new PSTFile(file);
+                        pstFileFromWorker.put(Thread.currentThread(), pstFile);
+                    }
+                    return pstFile;
+                }
+
+                private void closeWorkerFiles() {
+                    pstFileFromWorker.values().forEach(this::closeFile);
+                    pstFileFromWorker.clear();
+                }
+
+                private void closeFile(PSTFile pstFile) {
+                    if (pstFile == null) return;
+
+                    try {
+                        pstFile.close();
+                    } catch (IOException ex) {
                         log.error(ex.getMessage(), ex);
                     }
                 }
             };
 
-            task.setOnSucceeded((event) -> {
-                if (isTreePluginEnabled) {
-                    CheckBoxTreeItem<TreeObject> rootTreeItem = (CheckBoxTreeItem<TreeObject>)event.getSource().getValue();
+            executorService.submit(() -> {
+                try {
+                    CheckBoxTreeItem<TreeObject> rootTreeItem = task.call();
 
-                    kmeelAPI.plugins().getPluginManager().getExtensions(PluginableFileTree.class).forEach(pluginableFileTree -> {
-                        pluginableFileTree.addTreeItem(rootTreeItem);
-                    });
+                    if (isTreePluginEnabled && rootTreeItem != null) {
+                        Platform.runLater(() -> {
+                            kmeelAPI.plugins().getPluginManager().getExtensions(PluginableFileTree.class).forEach(pluginableFileTree -> {
+                                pluginableFileTree.addTreeItem(rootTreeItem);
+                            });
+                        });
+                    }
+                } catch (Exception ex) {
+                    log.error("Failed to parse " + file.getPath(), ex);
                 }
 
-                kmeelAPI.settings().set(getName() + "-Parsed", "true");
                 if (finishedListener != null) finishedListener.actionPerformed(null);
             });
-
-            executorService.submit(task);
         }
 
         @Override
@@ -264,5 +396,10 @@ public class PSTParserPlugin extends Plugin {
         public void treeSelectionUpdate(CheckBoxTreeItem<Object> updatedItem, boolean removed, MessagePane messagePane) {
             TreeSelectionHandler.getInstance().handleUpdate(kmeelAPI, updatedItem, removed, messagePane);
         }
+
+        @Override
+        public void treeSelectionUpdate(List<CheckBoxTreeItem<Object>> updatedItems, boolean removed, MessagePane messagePane) {
+            TreeSelectionHandler.getInstance().handleUpdate(kmeelAPI, updatedItems, removed, messagePane);
+        }
     }
 }
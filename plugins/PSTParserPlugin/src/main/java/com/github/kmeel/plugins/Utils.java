@@ -54,6 +54,37 @@ public class Utils {
      * @return The RTF, HTML or plaintext body of the PSTObject
      */
     public static String getBody(SimpleDateFormat DATE_FORMAT, PSTObject pstObject) {
+        PSTMessage message = (PSTMessage) pstObject;
+
+        try {
+            return getBodyPrefix(DATE_FORMAT, pstObject) + convertBody(message.getRTFBody(), message.getBodyHTML(), message.getBody());
+        } catch (PSTException | IOException ex) {
+            log.error(ex.getMessage(), ex);
+            return getBodyPrefix(DATE_FORMAT, pstObject);
+        }
+    }
+
+    /**
+     * Doesn't read from the PSTFile, so this can be done outside the thread which reads the PSTObject.
+     *
+     * @return The converted RTF body, otherwise the HTML or plaintext body.
+     */
+    public static String convertBody(String rtfBody, String htmlBody, String plainBody) {
+        String rtfText = rtfBody != null && !rtfBody.isEmpty() ? Utils.getRTFFromString(rtfBody) : "";
+
+        if (!rtfText.isEmpty()) {
+            return rtfText.replaceAll("\n", "<br/>");
+        } else if (htmlBody != null && !htmlBody.isEmpty()) {
+            return htmlBody;
+        } else {
+            return plainBody != null ? plainBody.replaceAll("\n", "<br/>") : "";
+        }
+    }
+
+    /**
+     * @return The details of appointments, contacts and tasks which are shown above the body.
+     */
+    public static String getBodyPrefix(SimpleDateFormat DATE_FORMAT, PSTObject pstObject) {
         if (pstObject instanceof PSTAppointment) {
             // Appointment
             PSTAppointment appointment = (PSTAppointment)pstObject;
@@ -75,18 +106,6 @@ public class Utils {
 
             builder.append("<br/>");
 
-            try {
-                if (!Utils.getRTFFromString(appointment.getRTFBody()).isEmpty()) {
-                    builder.append(Utils.getRTFFromString(appointment.getRTFBody()).replaceAll("\n", "<br/>"));
-                } else if (!appointment.getBodyHTML().isEmpty()) {
-                    builder.append(appointment.getBodyHTML());
-                } else {
-                    builder.append(appointment.getBody().replaceAll("\n", "<br/>"));
-                }
-            } catch (PSTException | IOException ex) {
-                log.error(ex.getMessage(), ex);
-            }
-
             return builder.toString();
         } else if (pstObject instanceof PSTContact) {
             // Contact
@@ -200,18 +219,6 @@ public class Utils {
             if (!contact.getWorkAddressState().isEmpty()) builder.append("<b>Work State: </b>").append(contact.getWorkAddressState()).append("<br/>");
             if (!contact.getWorkAddressStreet().isEmpty()) builder.append("<b>Work Street: </b>").append(contact.getWorkAddressStreet()).append("<br/>");
 
-            try {
-                if (!Utils.getRTFFromString(contact.getRTFBody()).isEmpty()) {
-                    builder.append(Utils.getRTFFromString(contact.getRTFBody()).replaceAll("\n", "<br/>"));
-                } else if (!contact.getBodyHTML().isEmpty()) {
-                    builder.append(contact.getBodyHTML());
-                } else {
-                    builder.append(contact.getBody().replaceAll("\n", "<br/>"));
-                }
-            } catch (PSTException | IOException ex) {
-                log.error(ex.getMessage(), ex);
-            }
-
             return builder.toString();
         } else if (pstObject instanceof PSTTask) {
             // Task
@@ -226,34 +233,7 @@ public class Utils {
             if (!task.getTaskRole().isEmpty()) builder.append("</b>Task Role: </b>").append(task.getTaskRole()).append("<br/>");
             builder.append("<b>Team Task: </b>").append(task.isTeamTask()).append("<br/>");
 
-            try {
-                if (!Utils.getRTFFromString(task.getRTFBody()).isEmpty()) {
-                    builder.append(Utils.getRTFFromString(task.getRTFBody()).replaceAll("\n", "<br/>"));
-                } else if (!task.getBodyHTML().isEmpty()) {
-                    builder.append(task.getBodyHTML());
-                } else {
-                    builder.append(task.getBody().replaceAll("\n", "<br/>"));
-                }
-            } catch (PSTException | IOException ex) {
-                log.error(ex.getMessage(), ex);
-            }
-
             return builder.toString();
-        } else {
-            // Normal message
-            PSTMessage message = (PSTMessage) pstObject;
-
-            try {
-                if (!Utils.getRTFFromString(message.getRTFBody()).isEmpty()) {
-                    return Utils.getRTFFromString(message.getRTFBody()).replaceAll("\n", "<br/>");
-                } else if (!message.getBodyHTML().isEmpty()) {
-                    return message.getBodyHTML();
-                } else {
-                    return message.getBody().replaceAll("\n", "<br/>");
-                }
-            } catch (PSTException | IOException ex) {
-                log.error(ex.getMessage(), ex);
-            }
         }
         return "";
     }
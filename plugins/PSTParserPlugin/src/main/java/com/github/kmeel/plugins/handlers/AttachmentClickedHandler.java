@@ -20,10 +20,11 @@ package com.github.kmeel.plugins.handlers;
 
 import com.github.kmeel.api.KmeelAPI;
 import com.github.kmeel.api.model.objects.AttachmentRow;
+import com.github.kmeel.api.model.objects.Message;
+import com.github.kmeel.api.model.objects.MessageAttachment;
 import com.github.kmeel.api.utils.OSUtils;
 import com.github.kmeel.api.view.MessagePane;
 import com.github.kmeel.plugins.model.PSTModel;
-import com.pff.PSTObject;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
@@ -53,19 +54,27 @@ public class AttachmentClickedHandler {
     }
 
     public void handle(MessagePane messagePane) {
-        PSTObject pstObject = PSTModel.getInstance().getFromID(kmeelAPI, messagePane.getTable().getSelectionModel().getSelectedItem().getId());
+        Message message = PSTModel.getInstance().getMessage(kmeelAPI, messagePane.getTable().getSelectionModel().getSelectedItem().getId());
 
-        if (pstObject != null && messagePane.getAttachmentsTable().getSelectionModel().getSelectedItem() != null) {
+        if (message != null && messagePane.getAttachmentsTable().getSelectionModel().getSelectedItem() != null) {
             Platform.runLater(() -> {
                 Optional<ButtonType> confirmOpen = new Alert(Alert.AlertType.CONFIRMATION, "Are you sure you want to open this attachment?", ButtonType.YES, ButtonType.NO).showAndWait();
                 if (confirmOpen.isPresent() && confirmOpen.get() == ButtonType.NO) return;
 
                 AttachmentRow attachmentRow = messagePane.getAttachmentsTable().getSelectionModel().getSelectedItem();
 
-                InputStream inputStream = PSTModel.getInstance().getAttachmentFromID().get(attachmentRow.getID());
+                MessageAttachment attachment = message.getAttachments().stream()
+                        .filter(messageAttachment -> messageAttachment.getRow().equals(attachmentRow))
+                        .findFirst()
+                        .orElse(null);
                 Path outputFile = Paths.get(OSUtils.getTempPath() + attachmentRow.getAttachmentName());
 
-                try {
+                if (attachment == null) return;
+
+                // The content is only read now
+                try (InputStream inputStream = attachment.getInputStream()) {
+                    if (inputStream == null) throw new IOException("The attachment can't be read.");
+
                     Files.copy(inputStream, outputFile, StandardCopyOption.REPLACE_EXISTING);
                     outputFile.toFile().deleteOnExit();
                 } catch (IOException ex) {
@@ -53,9 +53,8 @@ public class MessageClickedHandler {
             messagePane.setHeadersText(message.getHeaders());
             messagePane.setAttachmentTabAmount(message.getAttachments().size());
 
+            // Attachments are only read when they're opened
             message.getAttachments().forEach(attachment -> {
-                PSTModel.getInstance().getAttachmentFromID().put(attachment.getRow().getID(), attachment.getInputStream());
-
                 Platform.runLater(() -> {
                     messagePane.getAttachmentsTable().getItems().add(attachment.getRow());
                 });
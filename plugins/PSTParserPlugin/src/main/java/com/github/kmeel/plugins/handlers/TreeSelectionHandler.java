@@ -19,6 +19,7 @@
 package com.github.kmeel.plugins.handlers;
 
 import com.github.kmeel.api.KmeelAPI;
+import com.github.kmeel.api.model.MessageRows;
 import com.github.kmeel.api.model.objects.ID;
 import com.github.kmeel.api.model.objects.MessageRow;
 import com.github.kmeel.api.view.MessagePane;
@@ -28,10 +29,9 @@ import javafx.application.Platform;
 import javafx.scene.Cursor;
 import javafx.scene.control.CheckBoxTreeItem;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.search.IndexSearcher;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -55,32 +55,39 @@ public class TreeSelectionHandler {
     }
 
     public void handleUpdate(KmeelAPI kmeelAPI, CheckBoxTreeItem<Object> treeItem, boolean removed, MessagePane messagePane) {
+        handleUpdate(kmeelAPI, Collections.singletonList(treeItem), removed, messagePane);
+    }
+
+    /**
+     * Updates the MessagePane once for all tree items (the union of their folders).
+     */
+    public void handleUpdate(KmeelAPI kmeelAPI, List<CheckBoxTreeItem<Object>> treeItems, boolean removed, MessagePane messagePane) {
+        if (treeItems.stream().noneMatch(treeItem -> treeItem.getValue() instanceof TreeObject)) return;
+
         updateQueue.submit(() -> {
             Platform.runLater(() -> messagePane.getTable().setCursor(Cursor.WAIT));
-            List<MessageRow> rows = new ArrayList<>();
-
-            // Get all messages from the selected tree item then add them to the MessagePane
-            if (treeItem.getValue() != null && treeItem.getValue() instanceof TreeObject) {
-                Set<ID> messagesFromNode = PSTModel.getInstance().getFromNode(kmeelAPI, treeItem);
-
-                if (messagesFromNode != null) {
-                    for (ID id : messagesFromNode) {
-
-                        if (removed) {
-                            Platform.runLater(() -> {
-                                messagePane.getTable().getItems().removeIf(item -> item.getId().equals(id));
-                            });
-                        } else {
-                            rows.add(PSTModel.getInstance().getMessage(kmeelAPI, id).getRow());
-                        }
-                    }
-
-                    if (!removed) {
-                        Platform.runLater(() -> {
-                            messagePane.getTable().getItems().addAll(rows);
-                        });
-                    }
+            IndexSearcher indexSearcher = kmeelAPI.searcher().acquire();
+
+            // Get all messages from the tree items then update the MessagePane once
+            try {
+                int[] messagesFromNodes = PSTModel.getInstance().getFromNodes(kmeelAPI, indexSearcher, treeItems);
+
+                if (removed) {
+                    Set<ID> removedIDs = new HashSet<>(kmeelAPI.searcher().lookup().getIDs(indexSearcher, messagesFromNodes));
+
+                    Platform.runLater(() -> {
+                        messagePane.getTable().getItems().removeIf(item -> removedIDs.contains(item.getId()));
+                    });
+                } else {
+                    // Built from the index, the PST is only opened when a message is viewed
+                    List<MessageRow> rows = new MessageRows(kmeelAPI).getRows(indexSearcher, messagesFromNodes);
+
+                    Platform.runLater(() -> {
+                        messagePane.getTable().getItems().addAll(rows);
+                    });
                 }
+            } finally {
+                kmeelAPI.searcher().release(indexSearcher);
             }
 
             Platform.runLater(() -> messagePane.getTable().setCursor(Cursor.DEFAULT));
@@ -19,9 +19,13 @@
 package com.github.kmeel.plugins.model;
 
 import com.github.kmeel.api.KmeelAPI;
+import com.github.kmeel.api.model.FieldLimits;
+import com.github.kmeel.api.model.MessageRows;
+import com.github.kmeel.api.model.NumericFields;
 import com.github.kmeel.plugins.Utils;
 import com.github.kmeel.plugins.model.object.PSTFileID;
 import com.github.kmeel.plugins.model.object.PSTFolderID;
+import com.github.kmeel.plugins.model.object.PSTRecord;
 import com.pff.*;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.lucene.document.Document;
@@ -29,6 +33,7 @@ import org.apache.lucene.document.Field;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 
@@ -39,12 +44,20 @@ import java.text.SimpleDateFormat;
 @Slf4j
 public class PSTIndexer {
 
-    private KmeelAPI kmeelAPI;
-    private SimpleDateFormat DATE_FORMAT;
+    private File source;
+    private String pstFileID;
 
-    public PSTIndexer(KmeelAPI kmeelAPI) {
-        this.kmeelAPI = kmeelAPI;
-        DATE_FORMAT = new SimpleDateFormat(kmeelAPI.settings().get("DateFormat"));
+    // Used by multiple folder workers at once, SimpleDateFormat isn't thread-safe
+    private ThreadLocal<SimpleDateFormat> DATE_FORMAT;
+
+    /**
+     * @param source The PST file, every document gets its path as "Source".
+     */
+    public PSTIndexer(KmeelAPI kmeelAPI, File source) {
+        this.source = source;
+
+        String dateFormat = kmeelAPI.settings().get("DateFormat");
+        DATE_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat(dateFormat));
     }
 
     /*
@@ -53,165 +66,173 @@ public class PSTIndexer {
      * A StringField will only give results for exact matches.
      */
 
-    public void index(PSTFile pstFile, PSTFolder pstFolder, String folderPath, PSTAppointment appointment) {
-        Document document = new Document();
-        StringBuilder searchableText = new StringBuilder();
-
-        document.add(new StringField("ID", PSTModel.getInstance().getID(appointment).getId(), Field.Store.YES));
-        searchableText.append(" ").append(PSTModel.getInstance().getID(appointment));
-
-        document.add(new StringField("PSTFileID", new PSTFileID(pstFile).getId(), Field.Store.YES));
-        searchableText.append(" ").append(new PSTFileID(pstFile).getId());
+    /*
+     * The sourceRange identifies the folder chunk this object is indexed in,
+     * so an interrupted ingest can remove the documents of unfinished chunks.
+     */
 
-        // Used to get all messages from a specific PSTFolder by
-        // searching for the folder ID.
-        document.add(new StringField("PSTFolderID", new PSTFolderID(pstFolder).getId(), Field.Store.YES));
-        searchableText.append(" ").append(new PSTFolderID(pstFolder).getId());
+    /**
+     * Reads everything needed from the PSTObject, this should be called
+     * on the thread which owns the PSTFile handle.
+     *
+     * @return The record to pass on to the pipeline, null if this type isn't indexed.
+     */
+    public PSTRecord read(PSTFile pstFile, PSTFolder pstFolder, String folderPath, String sourceRange, PSTObject pstObject) {
+        if (!(pstObject instanceof PSTMessage)) {
+            return null;
+        }
+        PSTMessage message = (PSTMessage) pstObject;
+        SimpleDateFormat dateFormat = DATE_FORMAT.get();
+
+        PSTRecord record = new PSTRecord(
+                PSTModel.getInstance().getID(message).getId(),
+                getPSTFileID(pstFile),
+                new PSTFolderID(pstFolder).getId(),
+                folderPath,
+                source.getPath(),
+                sourceRange
+        );
+
+        record.setSubject(message.getSubject());
+        record.setBodyPrefix(Utils.getBodyPrefix(dateFormat, message));
+
+        // Only one body waits in the pipeline, the others are only read when it's empty
+        record.setPlainBody(message.getBody());
+        if (record.getPlainBody() == null || record.getPlainBody().isEmpty()) {
+            record.setHtmlBody(message.getBodyHTML());
+        }
+        if ((record.getPlainBody() == null || record.getPlainBody().isEmpty()) && (record.getHtmlBody() == null || record.getHtmlBody().isEmpty())) {
+            try {
+                record.setRtfBody(message.getRTFBody());
+            } catch (PSTException | IOException ex) {
+                log.error(ex.getMessage(), ex);
+            }
+        }
 
-        document.add(new StringField("FolderPath", folderPath, Field.Store.YES));
+        record.setReceived(message.getMessageDeliveryTime());
+        record.setSent(message.getClientSubmitTime());
+        record.setSize(message.getMessageSize());
+        record.setSenderEmailAddress(message.getSenderEmailAddress());
+        record.setDisplayTo(message.getDisplayTo());
+        record.setDisplayCC(message.getDisplayCC());
 
-        if (!appointment.getSubject().isEmpty()) {
-            document.add(new TextField("Subject", appointment.getSubject(), Field.Store.NO));
-            searchableText.append(" ").append(appointment.getSubject());
+        if (message instanceof PSTContact) {
+            return record;
         }
 
-        String body = Utils.getBody(DATE_FORMAT, appointment);
-        if (!body.isEmpty()) {
-            document.add(new TextField("Body", body, Field.Store.NO));
-            searchableText.append(" ").append(body);
-        }
-        if (appointment.getAllAttendees().isEmpty()) {
-            document.add(new TextField("Attendees", appointment.getAllAttendees(), Field.Store.NO));
-            searchableText.append(" ").append(appointment.getAllAttendees());
+        if (message instanceof PSTAppointment) {
+            record.setAttendees(((PSTAppointment) message).getAllAttendees());
+            record.setDeliveryTimeField("DeliveryTime");
+        } else {
+            record.setFrom(message.getSenderName());
+            record.setHeaders(message.getTransportMessageHeaders());
+            record.setDeliveryTimeField("Received");
         }
-        if (appointment.getMessageDeliveryTime() != null) {
-            document.add(new TextField("DeliveryTime", DATE_FORMAT.format(appointment.getMessageDeliveryTime()), Field.Store.NO));
-            searchableText.append(" ").append(DATE_FORMAT.format(appointment.getMessageDeliveryTime()));
+        if (message.getMessageDeliveryTime() != null) {
+            record.setDeliveryTime(dateFormat.format(message.getMessageDeliveryTime()));
         }
-        if (appointment.getClientSubmitTime() != null) {
-            document.add(new TextField("SubmitTime", DATE_FORMAT.format(appointment.getClientSubmitTime()), Field.Store.NO));
-            searchableText.append(" ").append(DATE_FORMAT.format(appointment.getClientSubmitTime()));
+        if (message.getClientSubmitTime() != null) {
+            record.setSubmitTime(dateFormat.format(message.getClientSubmitTime()));
         }
 
-        if (appointment.hasAttachments()) {
-            for (int i = 0; i < appointment.getNumberOfAttachments(); i++) {
+        if (message.hasAttachments()) {
+            for (int i = 0; i < message.getNumberOfAttachments(); i++) {
                 try {
-                    PSTAttachment attachment = appointment.getAttachment(i);
-
-                    document.add(new TextField("AttachmentName", attachment.getLongFilename(), Field.Store.NO));
-                    searchableText.append(" ").append(attachment.getLongFilename());
+                    record.getAttachmentNames().add(message.getAttachment(i).getLongFilename());
                 } catch (PSTException | IOException ex) {
                     log.error(ex.getMessage(), ex);
                 }
             }
         }
+        return record;
+    }
 
-        try {
-            document.add(new TextField("Contents", searchableText.toString(), Field.Store.NO));
-            kmeelAPI.indexer().getIndexWriter().addDocument(document);
-        } catch (IOException ex) {
-            log.error(ex.getMessage() + ": " + Thread.currentThread().getStackTrace()[2].getLineNumber());
-        }
+    /**
+     * Converts the raw (RTF, HTML or plain) body of the record.
+     */
+    public static PSTRecord extractBody(PSTRecord record) {
+        record.setBody(record.getBodyPrefix() + Utils.convertBody(record.getRtfBody(), record.getHtmlBody(), record.getPlainBody()));
+
+        record.setRtfBody(null);
+        record.setHtmlBody(null);
+        record.setPlainBody(null);
+        return record;
     }
 
-    public void index(PSTFile pstFile, PSTFolder pstFolder, String folderPath, PSTContact contact) {
+    /**
+     * The body and headers are added as capped Reader fields.
+     * There is no Contents field, the Searcher searches all text fields by default.
+     *
+     * @return The Lucene document of the record.
+     */
+    public static Document createDocument(PSTRecord record, FieldLimits fieldLimits) {
         Document document = new Document();
-        StringBuilder searchableText = new StringBuilder();
+        String messageSource = record.getSource() + " (" + record.getId() + ")";
 
-        document.add(new StringField("ID", PSTModel.getInstance().getID(contact).getId(), Field.Store.YES));
-        searchableText.append(" ").append(PSTModel.getInstance().getID(contact));
+        document.add(new StringField("ID", record.getId(), Field.Store.YES));
 
-        document.add(new StringField("PSTFileID", new PSTFileID(pstFile).getId(), Field.Store.YES));
-        searchableText.append(" ").append(new PSTFileID(pstFile).getId());
+        document.add(new StringField("PSTFileID", record.getPstFileID(), Field.Store.YES));
 
         // Used to get all messages from a specific PSTFolder
         // by searching for the ID.
-        document.add(new StringField("PSTFolderID", new PSTFolderID(pstFolder).getId(), Field.Store.YES));
-        searchableText.append(" ").append(new PSTFolderID(pstFolder).getId());
+        document.add(new StringField("PSTFolderID", record.getPstFolderID(), Field.Store.YES));
 
-        document.add(new StringField("FolderPath", folderPath, Field.Store.YES));
+        document.add(new StringField("FolderPath", record.getFolderPath(), Field.Store.YES));
 
-        if (!contact.getSubject().isEmpty()) {
-            document.add(new TextField("Subject", contact.getSubject(), Field.Store.NO));
-            searchableText.append(" ").append(contact.getSubject());
-        }
+        // Used to remove all documents of this source when it changes
+        document.add(new StringField("Source", record.getSource(), Field.Store.NO));
+        document.add(new StringField("SourceRange", record.getSourceRange(), Field.Store.NO));
 
-        String body = Utils.getBody(DATE_FORMAT, contact);
-        if (!body.isEmpty()) {
-            document.add(new TextField("Body", body, Field.Store.NO));
-            searchableText.append(" ").append(body);
+        if (!record.getSubject().isEmpty()) {
+            document.add(new TextField("Subject", record.getSubject(), Field.Store.NO));
         }
-
-        try {
-            document.add(new TextField("Contents", searchableText.toString(), Field.Store.NO));
-            kmeelAPI.indexer().getIndexWriter().addDocument(document);
-        } catch (IOException ex) {
-            log.error(ex.getMessage() + ": " + Thread.currentThread().getStackTrace()[2].getLineNumber());
+        if (!record.getFrom().isEmpty()) {
+            document.add(new TextField("From", record.getFrom(), Field.Store.NO));
         }
-    }
-
-    public void index(PSTFile pstFile, PSTFolder pstFolder, String folderPath, PSTMessage message) {
-        Document document = new Document();
-        StringBuilder searchableText = new StringBuilder();
-
-        document.add(new StringField("ID", PSTModel.getInstance().getID(message).getId(), Field.Store.YES));
-        searchableText.append(" ").append(PSTModel.getInstance().getID(message));
-
-        document.add(new StringField("PSTFileID", new PSTFileID(pstFile).getId(), Field.Store.YES));
-        searchableText.append(" ").append(new PSTFileID(pstFile).getId());
-
-        // Used to get all messages from a specific PSTFolder
-        // by searching for the ID.
-        document.add(new StringField("PSTFolderID", new PSTFolderID(pstFolder).getId(), Field.Store.YES));
-        searchableText.append(" ").append(new PSTFolderID(pstFolder).getId());
-
-        document.add(new StringField("FolderPath", folderPath, Field.Store.YES));
-
-        if (!message.getSubject().isEmpty()) {
-            document.add(new TextField("Subject", message.getSubject(), Field.Store.NO));
-            searchableText.append(" ").append(message.getSubject());
+        if (!record.getBody().isEmpty()) {
+            fieldLimits.add(document, "Body", record.getBody(), messageSource);
         }
-        if (!message.getSenderName().isEmpty()) {
-            document.add(new TextField("From", message.getSenderName(), Field.Store.NO));
-            searchableText.append(" ").append(message.getSenderName());
+        if (!record.getAttendees().isEmpty()) {
+            document.add(new TextField("Attendees", record.getAttendees(), Field.Store.NO));
         }
-
-        String body = Utils.getBody(DATE_FORMAT, message);
-        if (!body.isEmpty()) {
-            document.add(new TextField("Body", body, Field.Store.NO));
-            searchableText.append(" ").append(body);
+        if (!record.getHeaders().isEmpty()) {
+            fieldLimits.add(document, "Headers", record.getHeaders(), messageSource);
         }
-        if (!message.getTransportMessageHeaders().isEmpty()) {
-            document.add(new TextField("Headers", message.getTransportMessageHeaders(), Field.Store.NO));
-            searchableText.append(" ").append(message.getTransportMessageHeaders());
+        if (record.getDeliveryTime() != null) {
+            document.add(new TextField(record.getDeliveryTimeField(), record.getDeliveryTime(), Field.Store.NO));
         }
-        if (message.getMessageDeliveryTime() != null) {
-            document.add(new TextField("Received", DATE_FORMAT.format(message.getMessageDeliveryTime()), Field.Store.NO));
-            searchableText.append(" ").append(DATE_FORMAT.format(message.getMessageDeliveryTime()));
+        if (record.getSubmitTime() != null) {
+            document.add(new TextField("SubmitTime", record.getSubmitTime(), Field.Store.NO));
         }
-        if (message.getClientSubmitTime() != null) {
-            document.add(new TextField("SubmitTime", DATE_FORMAT.format(message.getClientSubmitTime()), Field.Store.NO));
-            searchableText.append(" ").append(DATE_FORMAT.format(message.getClientSubmitTime()));
+        for (String attachmentName : record.getAttachmentNames()) {
+            document.add(new TextField("AttachmentName", attachmentName, Field.Store.NO));
         }
 
-        if (message.hasAttachments()) {
-            for (int i = 0; i < message.getNumberOfAttachments(); i++) {
-                try {
-                    PSTAttachment attachment = message.getAttachment(i);
-
-                    document.add(new TextField("AttachmentName", attachment.getLongFilename(), Field.Store.NO));
-                    searchableText.append(" ").append(attachment.getLongFilename());
-                } catch (PSTException | IOException ex) {
-                    log.error(ex.getMessage(), ex);
-                }
-            }
+        NumericFields.addDate(document, NumericFields.RECEIVED, record.getReceived());
+        NumericFields.addDate(document, NumericFields.SENT, record.getSent());
+        if (record.getSize() >= 0) {
+            NumericFields.addLong(document, NumericFields.SIZE, record.getSize());
         }
 
-        try {
-            document.add(new TextField("Contents", searchableText.toString(), Field.Store.NO));
-            kmeelAPI.indexer().getIndexWriter().addDocument(document);
-        } catch (IOException ex) {
-            log.error(ex.getMessage() + ": " + Thread.currentThread().getStackTrace()[2].getLineNumber());
+        MessageRows.add(document,
+                record.getSenderEmailAddress(),
+                record.getDisplayTo(),
+                record.getDisplayCC(),
+                record.getSubject(),
+                record.getSize(),
+                record.getReceived()
+        );
+
+        return document;
+    }
+
+    /**
+     * @return The PSTFileID of the source, which is the same for every handle.
+     */
+    private String getPSTFileID(PSTFile pstFile) {
+        if (pstFileID == null) {
+            pstFileID = new PSTFileID(pstFile).getId();
         }
+        return pstFileID;
     }
 }
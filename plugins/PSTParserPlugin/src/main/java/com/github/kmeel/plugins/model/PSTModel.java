@@ -31,16 +31,15 @@ import javafx.scene.control.TreeItem;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.IndexSearcher;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Marten4n6
@@ -50,8 +49,8 @@ public class PSTModel {
 
     private static final PSTModel INSTANCE = new PSTModel();
 
-    private @Getter HashMap<String, PSTFile> fileFromHash = new HashMap<>();
-    private @Getter HashMap<ID, InputStream> attachmentFromID = new HashMap<>();
+    // Only used to view messages, PSTFile isn't thread-safe so loads are synchronized on the handle
+    private @Getter ConcurrentHashMap<String, PSTFile> fileFromHash = new ConcurrentHashMap<>();
 
     private PSTModel() {}
 
@@ -62,16 +61,33 @@ public class PSTModel {
         return INSTANCE;
     }
 
+    /**
+     * Adds the handle used to view the messages of a PST, replacing (and closing) the previous handle of the same PST.
+     */
+    public void setFile(PSTFile pstFile) {
+        PSTFile previousFile = fileFromHash.put(new PSTFileID(pstFile).getId(), pstFile);
+
+        if (previousFile != null && previousFile != pstFile) {
+            synchronized (previousFile) {
+                try {
+                    previousFile.close();
+                } catch (IOException ex) {
+                    log.error(ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
     /**
      * @return The PSTObject from the specified ID
      */
     public PSTObject getFromID(KmeelAPI kmeelAPI, ID id) {
         try {
-            Query query = new TermQuery(new Term("ID", id.getId()));
-            ScoreDoc[] hits = kmeelAPI.searcher().search(query, 1).scoreDocs;
-            Document document = kmeelAPI.searcher().getDocument(hits[0].doc);
+            PSTFile pstFile = getFile(kmeelAPI, id);
 
-            return PSTObject.detectAndLoadPSTObject(fileFromHash.get(new PSTFileID(document.get("PSTFileID")).getId()), Long.parseLong(id.getId().split(" ")[0]));
+            synchronized (pstFile) {
+                return PSTObject.detectAndLoadPSTObject(pstFile, Long.parseLong(id.getId().split(" ")[0]));
+            }
         } catch (Exception ex) {
             // This ID doesn't belong to the PSTParser (hopefully)
             // log.debug(ex.getMessage(), ex);
@@ -80,51 +96,36 @@ public class PSTModel {
     }
 
     /**
-     * @return A list of IDs from the specified node
+     * @return The handle used to view the PST of this ID, everything read from it should be synchronized on the handle.
      */
-    public Set<ID> getFromNode(KmeelAPI kmeelAPI, TreeItem treeItem) {
-        if (!(treeItem.getValue() instanceof TreeObject) || treeItem.getValue() == null) return null;
-
-        try {
-            TreeObject treeObject = (TreeObject) treeItem.getValue();
-            Set<ID> messageIDs = new HashSet<>();
-
-            Query query = new TermQuery(new Term("PSTFolderID", treeObject.getFolderID()));
-            ScoreDoc[] hits = kmeelAPI.searcher().search(query, Integer.MAX_VALUE).scoreDocs;
+    private PSTFile getFile(KmeelAPI kmeelAPI, ID id) {
+        String pstFileID = kmeelAPI.searcher().lookup().getValue(id, "PSTFileID");
 
-            for (int i = 0; i < hits.length; i++) {
-                Document document = kmeelAPI.searcher().getDocument(hits[i].doc);
+        return pstFileID != null ? fileFromHash.get(new PSTFileID(pstFileID).getId()) : null;
+    }
 
-                if (document.get("PSTFolderID").equals(treeObject.getFolderID())) {
-                    messageIDs.add(new ID(document.get("ID")));
-                }
-            }
+    /**
+     * @return The (sorted) document IDs in the searcher of the messages from all specified nodes
+     */
+    public int[] getFromNodes(KmeelAPI kmeelAPI, IndexSearcher indexSearcher, List<? extends TreeItem<Object>> treeItems) {
+        Set<String> folderIDs = new LinkedHashSet<>();
 
-            return messageIDs;
-        } catch (Exception ex) {
-            // This ID doesn't belong to the PSTParser (hopefully)
-            // log.debug(ex.getMessage(), ex);
-            return new HashSet<>(0);
+        for (TreeItem<Object> treeItem : treeItems) {
+            if (treeItem.getValue() instanceof TreeObject) folderIDs.add(((TreeObject) treeItem.getValue()).getFolderID());
         }
+        return kmeelAPI.searcher().lookup().getDocIDs(indexSearcher, "PSTFolderID", folderIDs);
     }
 
     public String getFolderPath(KmeelAPI kmeelAPI, ID id) {
-        try {
-            Query query = new TermQuery(new Term("ID", id.getId()));
-            ScoreDoc[] hits = kmeelAPI.searcher().search(query, 1).scoreDocs;
-            Document document = kmeelAPI.searcher().getDocument(hits[0].doc);
-
-            return document.get("FolderPath");
-        } catch (Exception ex) {
-            return null;
-        }
+        return kmeelAPI.searcher().lookup().getValue(id, "FolderPath");
     }
 
     /**
      * @return The Message from the specified ID
      */
     public Message getMessage(KmeelAPI kmeelAPI, ID id) {
-        if (getFromID(kmeelAPI, id) == null) return null;
+        // Indexed by this parser, the PST itself is only read when needed
+        if (kmeelAPI.searcher().lookup().getValue(id, "PSTFileID") == null) return null;
 
         return new Message() {
             @Override
@@ -184,95 +185,118 @@ public class PSTModel {
 
             @Override
             public String getBody() {
-                return Utils.getBody(new SimpleDateFormat(kmeelAPI.settings().get("DateFormat")), getFromID(kmeelAPI, id));
+                CachedMessage cachedMessage = getCachedMessage(kmeelAPI, id);
+                return cachedMessage != null ? cachedMessage.getBody() : null;
             }
 
             @Override
             public String getHeaders() {
-                PSTMessage message = (PSTMessage) getFromID(kmeelAPI, id);
-
-                return message.getTransportMessageHeaders().replaceAll("\n", "<br/>");
+                CachedMessage cachedMessage = getCachedMessage(kmeelAPI, id);
+                return cachedMessage != null ? cachedMessage.getHeaders() : null;
             }
 
             @Override
             public List<MessageAttachment> getAttachments() {
                 List<MessageAttachment> attachments = new ArrayList<>();
+                CachedMessage cachedMessage = getCachedMessage(kmeelAPI, id);
+
+                if (cachedMessage == null) return attachments;
 
-                PSTMessage message = (PSTMessage) getFromID(kmeelAPI, id);
-
-                for (int i = 0; i < message.getNumberOfAttachments(); i++) {
-                    try {
-                        PSTAttachment attachment = message.getAttachment(i);
-
-                        attachments.add(new MessageAttachment() {
-                            @Override
-                            public String getAttachmentName() {
-                                return Utils.getAttachmentName(attachment);
-                            }
-
-                            @Override
-                            public InputStream getInputStream() {
-                                try {
-                                    return attachment.getFileInputStream();
-                                } catch (IOException | PSTException ex) {
-                                    return null;
-                                }
-                            }
-
-                            @Override
-                            public AttachmentRow getRow() {
-                                SimpleDateFormat DATE_FORMAT = new SimpleDateFormat(kmeelAPI.settings().get("DateFormat"));
-
-                                return new AttachmentRow() {
-                                    @Override
-                                    public String getAttachmentName() {
-                                        return Utils.getAttachmentName(attachment);
-                                    }
-
-                                    @Override
-                                    public String getContentType() {
-                                        return attachment.getMimeTag();
-                                    }
-
-                                    @Override
-                                    public String getSize() {
-                                        return Utils.humanReadableByteCount(attachment.getSize());
-                                    }
-
-                                    @Override
-                                    public String getCreationTime() {
-                                        if (attachment.getCreationTime() != null) {
-                                            return DATE_FORMAT.format(attachment.getCreationTime());
-                                        } else {
-                                            return null;
-                                        }
-                                    }
-
-                                    @Override
-                                    public String getModificationTime() {
-                                        if (attachment.getModificationTime() != null) {
-                                            return DATE_FORMAT.format(attachment.getModificationTime());
-                                        } else {
-                                            return null;
-                                        }
-                                    }
-
-                                    @Override
-                                    public ID getID() {
-                                        return PSTModel.getInstance().getID(attachment);
-                                    }
-                                };
-                            }
-                        });
-                    } catch (PSTException | IOException ex) {
-                        log.error(ex.getMessage());
-                    }
+                for (CachedAttachment cachedAttachment : cachedMessage.getAttachments()) {
+                    attachments.add(new LazyAttachment(kmeelAPI, id, cachedAttachment.getIndex(), cachedAttachment) {
+                        @Override
+                        protected InputStream openStream() throws IOException, PSTException {
+                            return readAttachment(kmeelAPI, id, cachedAttachment.getIndex());
+                        }
+                    });
                 }
                 return attachments;
             }
         };
     }
 
+    /**
+     * @return The (cached) decoded body, headers and attachments of the message, null if it can't be loaded.
+     */
+    private CachedMessage getCachedMessage(KmeelAPI kmeelAPI, ID id) {
+        return kmeelAPI.messageCache().get(id, (key) -> {
+            PSTFile pstFile = getFile(kmeelAPI, key);
+
+            if (pstFile == null) return null;
+
+            // The attachments, body and headers are read from the shared handle
+            synchronized (pstFile) {
+                return loadMessage(kmeelAPI, key);
+            }
+        });
+    }
+
+    /**
+     * @return The decoded body, headers and attachments of the message, should be called while holding the handle.
+     */
+    private CachedMessage loadMessage(KmeelAPI kmeelAPI, ID id) {
+        PSTObject pstObject = getFromID(kmeelAPI, id);
+
+        if (!(pstObject instanceof PSTMessage)) return null;
+
+        PSTMessage message = (PSTMessage) pstObject;
+        SimpleDateFormat dateFormat = new SimpleDateFormat(kmeelAPI.settings().get("DateFormat"));
+        List<CachedAttachment> attachments = new ArrayList<>();
+
+        for (int i = 0; i < message.getNumberOfAttachments(); i++) {
+            try {
+                PSTAttachment attachment = message.getAttachment(i);
+
+                attachments.add(new CachedAttachment(
+                        i,
+                        Utils.getAttachmentName(attachment),
+                        attachment.getMimeTag(),
+                        Utils.humanReadableByteCount(attachment.getSize()),
+                        attachment.getCreationTime() != null ? dateFormat.format(attachment.getCreationTime()) : null,
+                        attachment.getModificationTime() != null ? dateFormat.format(attachment.getModificationTime()) : null,
+                        getID(attachment)
+                ));
+            } catch (PSTException | IOException ex) {
+                log.error(ex.getMessage());
+            }
+        }
+
+        return new CachedMessage(
+                Utils.getBody(dateFormat, message),
+                message.getTransportMessageHeaders().replaceAll("\n", "<br/>"),
+                attachments
+        );
+    }
+
+    /**
+     * The attachment is copied while holding the handle, so it can be read while other messages are viewed.
+     *
+     * @return A stream of the attachment content, null if the message can't be loaded.
+     */
+    private InputStream readAttachment(KmeelAPI kmeelAPI, ID id, int index) throws IOException, PSTException {
+        PSTFile pstFile = getFile(kmeelAPI, id);
+
+        if (pstFile == null) return null;
+
+        synchronized (pstFile) {
+            PSTObject pstObject = getFromID(kmeelAPI, id);
+
+            if (!(pstObject instanceof PSTMessage)) return null;
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+            try (InputStream inputStream = ((PSTMessage) pstObject).getAttachment(index).getFileInputStream()) {
+                byte[] buffer = new byte[8192];
+                int read;
+
+                while ((read = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, read);
+                }
+            }
+            return new ByteArrayInputStream(outputStream.toByteArray());
+        }
+    }
+
     /*
      * DON'T TOUCH THIS.
      * The first part of the ID contains the descriptor node ID,
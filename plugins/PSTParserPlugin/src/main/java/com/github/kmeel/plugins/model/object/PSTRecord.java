@@ -0,0 +1,70 @@
+/*
+ * This file is part of Kmeel.
+ * Copyright (C) 2017  Marten4n6
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.kmeel.plugins.model.object;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author Marten4n6
+ *         Everything needed to index a PSTObject, read while the PSTFile handle is held
+ *         so the slower body extraction and document building can happen on other threads.
+ */
+@Data
+public class PSTRecord {
+
+    private final String id;
+    private final String pstFileID;
+    private final String pstFolderID;
+    private final String folderPath;
+    private final String source;
+    private final String sourceRange;
+
+    private String subject = "";
+    private String from = "";
+    private String headers = "";
+    private String attendees = "";
+
+    // Field names differ per type (Received for messages, DeliveryTime for appointments)
+    private String deliveryTimeField;
+    private String deliveryTime;
+    private String submitTime;
+
+    // Typed fields, see NumericFields
+    private Date received;
+    private Date sent;
+    private long size = -1;
+
+    // Columns of the message table, see MessageRows
+    private String senderEmailAddress;
+    private String displayTo;
+    private String displayCC;
+
+    private List<String> attachmentNames = new ArrayList<>();
+
+    // The raw bodies are dropped once the body is extracted
+    private String bodyPrefix = "";
+    private String rtfBody;
+    private String htmlBody;
+    private String plainBody;
+    private String body;
+}
@@ -21,6 +21,8 @@ package com.github.kmeel.plugins.view;
 import javafx.concurrent.Task;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Marten4n6
@@ -28,7 +30,11 @@ import java.util.concurrent.CountDownLatch;
  */
 public class LoadingTask extends Task {
 
-    private CountDownLatch countDownLatch;
+    // Created here since done may be called before the loading view starts this task
+    private final CountDownLatch countDownLatch = new CountDownLatch(1);
+
+    private final long startTime = System.nanoTime();
+    private final AtomicLong lastMessageUpdate = new AtomicLong(0);
 
     public LoadingTask() {
         updateTitle("PSTParser");
@@ -36,7 +42,6 @@ public class LoadingTask extends Task {
 
     @Override
     protected Object call() throws Exception {
-        countDownLatch = new CountDownLatch(1);
         countDownLatch.await(); // Just wait until done is called
         return null;
     }
@@ -50,6 +55,45 @@ public class LoadingTask extends Task {
         super.updateProgress(workDone, max);
     }
 
+    /**
+     * Updates the progress and shows the indexing rate and estimated time left.
+     *
+     * @param isMaxFinal False while the maximum is still being counted.
+     */
+    public void updateProgress(String fileName, long workDone, long max, boolean isMaxFinal) {
+        updateProgress(workDone, max);
+
+        long now = System.nanoTime();
+        long lastUpdate = lastMessageUpdate.get();
+
+        // Don't build a new message for every indexed object
+        if (now - lastUpdate < TimeUnit.MILLISECONDS.toNanos(500) || !lastMessageUpdate.compareAndSet(lastUpdate, now)) {
+            return;
+        }
+
+        double seconds = (now - startTime) / 1_000_000_000.0;
+        long rate = seconds > 0 ? Math.round(workDone / seconds) : 0;
+
+        if (!isMaxFinal || rate == 0) {
+            updateMessage("Indexing: " + fileName + " (" + rate + " messages/s, counting...)");
+        } else {
+            updateMessage("Indexing: " + fileName + " (" + rate + " messages/s, " + getDuration((max - workDone) / rate) + " left)");
+        }
+    }
+
+    /**
+     * @return A human readable duration.
+     */
+    private String getDuration(long seconds) {
+        if (seconds >= 3600) {
+            return (seconds / 3600) + "h " + (seconds % 3600 / 60) + "m";
+        } else if (seconds >= 60) {
+            return (seconds / 60) + "m " + (seconds % 60) + "s";
+        } else {
+            return seconds + "s";
+        }
+    }
+
     @Override
     public void updateMessage(String message) {
         super.updateMessage(message);
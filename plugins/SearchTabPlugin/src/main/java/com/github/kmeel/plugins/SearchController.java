@@ -19,101 +19,121 @@
 package com.github.kmeel.plugins;
 
 import com.github.kmeel.api.KmeelAPI;
-import com.github.kmeel.api.model.objects.ID;
+import com.github.kmeel.api.model.MessageRows;
+import com.github.kmeel.api.model.SearchCursor;
 import com.github.kmeel.api.model.objects.MessageRow;
 import com.github.kmeel.api.view.MessagePane;
+import com.github.kmeel.api.view.objects.Footer;
 import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.scene.Cursor;
-import javafx.scene.control.Alert;
-import javafx.scene.control.ButtonType;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.lucene.document.Document;
 import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopDocs;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @author Marten4n6
- *         This class updates the message table with the search results
+ *         This class updates the message table with the search results,
+ *         results are loaded a page at a time while the table is scrolled down.
  */
 @Slf4j
 class SearchController {
 
+    private static final int PAGE_SIZE = 200;
+
     private KmeelAPI kmeelAPI;
 
     private MessagePane messagePane;
     private Task<List<MessageRow>> worker;
 
+    // Loads one page at a time, so a cursor is only closed after its last page is loaded
+    private ExecutorService pageService;
+    private SearchCursor cursor;
+
     private String query;
 
     SearchController(KmeelAPI kmeelAPI, MessagePane messagePane) {
         this.kmeelAPI = kmeelAPI;
         this.messagePane = messagePane;
+
+        pageService = Executors.newSingleThreadExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "Search pages");
+            thread.setDaemon(true);
+            return thread;
+        });
+        messagePane.setOnScrolledToEnd(this::loadNextPage);
     }
 
+    /**
+     * Should be called on the FX thread.
+     */
     void search(String query) {
         if (worker != null && !worker.isDone()) {
             worker.cancel(true);
         }
+        if (cursor != null) {
+            pageService.execute(cursor::close);
+            cursor = null;
+        }
 
         this.query = query;
 
-        worker = new Task<List<MessageRow>>() {
-            @Override
-            protected List<MessageRow> call() throws Exception {
-                try {
-                    Platform.runLater(() -> {
-                        messagePane.getTable().setCursor(Cursor.WAIT);
-                        messagePane.getTable().getItems().clear();
-                        messagePane.setFooter(null);
-                    });
+        messagePane.getTable().getItems().clear();
+        messagePane.setFooter(null);
 
-                    int searchLimit = Integer.parseInt(kmeelAPI.settings().get("SearchLimit"));
-                    if (searchLimit == 0) searchLimit = Integer.MAX_VALUE;
+        int searchLimit = kmeelAPI.settings().getInt("SearchLimit", 0);
 
-                    TopDocs topDocs = kmeelAPI.searcher().search(query, searchLimit);
-
-                    if (topDocs == null) {
-                        new Alert(Alert.AlertType.ERROR, "Invalid query.", ButtonType.CLOSE).showAndWait();
-                        return null;
-                    }
+        cursor = kmeelAPI.searcher().openCursor(query, PAGE_SIZE, searchLimit);
+        loadNextPage();
+    }
 
-                    ScoreDoc[] hits = topDocs.scoreDocs;
-                    List<MessageRow> rows = new ArrayList<>();
+    /**
+     * Adds the next page of results to the table, should be called on the FX thread.
+     */
+    private void loadNextPage() {
+        if (cursor == null || !cursor.hasNext() || (worker != null && !worker.isDone())) return;
 
-                    for (int i = 0; i < hits.length; i++) {
-                        if (isCancelled()) break;
+        SearchCursor pageCursor = cursor;
 
-                        Document document = kmeelAPI.searcher().getDocument(hits[i].doc);
+        worker = new Task<List<MessageRow>>() {
+            @Override
+            protected List<MessageRow> call() throws Exception {
+                List<MessageRow> rows = new ArrayList<>();
+                MessageRows messageRows = new MessageRows(kmeelAPI);
 
-                        rows.add(kmeelAPI.messages().getMessage(new ID(document.get("ID"))).getRow());
-                    }
+                for (ScoreDoc hit : pageCursor.nextPage()) {
+                    if (isCancelled()) break;
 
-                    return rows;
-                } catch (IOException ex) {
-                    log.error(ex.getMessage(), ex);
+                    MessageRow row = messageRows.getRow(pageCursor.getDocument(hit));
+                    if (row != null) rows.add(row);
                 }
-                return null;
+                return rows;
             }
         };
 
         worker.setOnSucceeded((event) -> {
-            List<MessageRow> rows = (List<MessageRow>)event.getSource().getValue();
+            if (pageCursor != cursor) return; // Results of a previous search
+
+            messagePane.getTable().getItems().addAll((List<MessageRow>) event.getSource().getValue());
+            messagePane.getTable().setCursor(Cursor.DEFAULT);
+            messagePane.setFooter(new Footer("Hits: " + pageCursor.getTotalHits(), kmeelAPI, messagePane.getTable()));
+        });
+        worker.setOnFailed((event) -> {
+            Throwable exception = event.getSource().getException();
 
-            Platform.runLater(() -> {
-                messagePane.getTable().getItems().addAll(rows);
-                messagePane.getTable().setCursor(Cursor.DEFAULT);
-            });
+            log.error(exception.getMessage(), exception);
+            messagePane.getTable().setCursor(Cursor.DEFAULT);
         });
 
-        new Thread(worker).start();
+        messagePane.getTable().setCursor(Cursor.WAIT);
+        pageService.execute(worker);
     }
 
     void refresh() {
-        if (query != null) search(query);
+        if (query != null) Platform.runLater(() -> search(query));
     }
-}
\ No newline at end of file
+}
@@ -45,6 +45,9 @@ import ro.fortsoft.pf4j.Plugin;
 import ro.fortsoft.pf4j.PluginWrapper;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * @author Marten4n6
@@ -62,6 +65,14 @@ public class TreeTabPlugin extends Plugin {
         private static ObservableList<CheckBoxTreeItem<Object>> treeItems = FXCollections.synchronizedObservableList(FXCollections.observableArrayList());
         private static MessagePane messagePane;
 
+        // Adds the items of files which finish parsing after the tab is created
+        private static ListChangeListener<CheckBoxTreeItem<Object>> treeItemsListener;
+
+        // Items (un)checked by the current gesture, only used on the FX thread
+        private final Set<CheckBoxTreeItem<Object>> checkedItems = new LinkedHashSet<>();
+        private final Set<CheckBoxTreeItem<Object>> uncheckedItems = new LinkedHashSet<>();
+        private boolean isUpdateScheduled;
+
         @Override
         public Tab getGlobalTab(KmeelAPI kmeelAPI) {
             Tab tab = new Tab();
@@ -83,6 +94,14 @@ public class TreeTabPlugin extends Plugin {
             rootTreeItem.getChildren().setAll(treeItems);
             rootTreeItem.setExpanded(true);
 
+            if (treeItemsListener != null) treeItems.removeListener(treeItemsListener);
+            treeItemsListener = (change) -> {
+                while (change.next()) {
+                    if (change.wasAdded()) rootTreeItem.getChildren().addAll(change.getAddedSubList());
+                }
+            };
+            treeItems.addListener(treeItemsListener);
+
             // Split Pane
             SplitPane splitPane = new SplitPane();
 
@@ -110,10 +129,11 @@ public class TreeTabPlugin extends Plugin {
                     treeItems.add(treeView.getSelectionModel().getSelectedItem());
                 }
 
-                treeItems.forEach(item -> {
-                    kmeelAPI.plugins().getPluginManager().getExtensions(PluginableFileTree.class).forEach(plugin -> {
-                        plugin.treeSelectionUpdate((CheckBoxTreeItem<Object>)item, false, messagePane);
-                    });
+                List<CheckBoxTreeItem<Object>> updatedItems = new ArrayList<>();
+                treeItems.forEach(item -> updatedItems.add((CheckBoxTreeItem<Object>) item));
+
+                kmeelAPI.plugins().getPluginManager().getExtensions(PluginableFileTree.class).forEach(plugin -> {
+                    plugin.treeSelectionUpdate(updatedItems, false, messagePane);
                 });
             });
             treeView.getCheckModel().getCheckedItems().addListener((ListChangeListener.Change<? extends TreeItem<Object>> change) -> {
@@ -124,33 +144,46 @@ public class TreeTabPlugin extends Plugin {
                     messagePane.setAttachmentTabAmount(0);
                 });
 
+                TreeItem selectedItem = treeView.getSelectionModel().getSelectedItem();
+
+                // Checking a parent checks every descendant separately, the whole gesture is collected
+                // and the plugins are updated once (an item checked and unchecked again cancels out)
                 while (change.next()) {
-                    if (change.wasAdded()) {
-                        change.getAddedSubList().forEach(treeItem -> {
-                            TreeItem selectedItem = treeView.getSelectionModel().getSelectedItem();
-
-                            if (selectedItem == null) {
-                                kmeelAPI.plugins().getPluginManager().getExtensions(PluginableFileTree.class).forEach(plugin -> {
-                                    plugin.treeSelectionUpdate((CheckBoxTreeItem<Object>) treeItem, false, messagePane);
-                                });
-                            } else if (!selectedItem.equals(treeItem)) {
-                                kmeelAPI.plugins().getPluginManager().getExtensions(PluginableFileTree.class).forEach(plugin -> {
-                                    plugin.treeSelectionUpdate((CheckBoxTreeItem<Object>) treeItem, false, messagePane);
-                                });
-                            }
-                        });
-                    } else {
-                        change.getRemoved().forEach(treeItem -> {
-                            kmeelAPI.plugins().getPluginManager().getExtensions(PluginableFileTree.class).forEach(plugin -> {
-                                plugin.treeSelectionUpdate((CheckBoxTreeItem<Object>) treeItem, true, messagePane);
-                            });
-                        });
-                    }
+                    change.getAddedSubList().forEach(treeItem -> {
+                        if (selectedItem == null || !selectedItem.equals(treeItem)) {
+                            if (!uncheckedItems.remove(treeItem)) checkedItems.add((CheckBoxTreeItem<Object>) treeItem);
+                        }
+                    });
+                    change.getRemoved().forEach(treeItem -> {
+                        if (!checkedItems.remove(treeItem)) uncheckedItems.add((CheckBoxTreeItem<Object>) treeItem);
+                    });
+                }
+
+                if (!isUpdateScheduled) {
+                    isUpdateScheduled = true;
+                    Platform.runLater(() -> updateCheckedItems(kmeelAPI));
                 }
             });
             return tab;
         }
 
+        /**
+         * Passes the items (un)checked since the last update to the plugins.
+         */
+        private void updateCheckedItems(KmeelAPI kmeelAPI) {
+            List<CheckBoxTreeItem<Object>> removedItems = new ArrayList<>(uncheckedItems);
+            List<CheckBoxTreeItem<Object>> addedItems = new ArrayList<>(checkedItems);
+
+            uncheckedItems.clear();
+            checkedItems.clear();
+            isUpdateScheduled = false;
+
+            kmeelAPI.plugins().getPluginManager().getExtensions(PluginableFileTree.class).forEach(plugin -> {
+                if (!removedItems.isEmpty()) plugin.treeSelectionUpdate(removedItems, true, messagePane);
+                if (!addedItems.isEmpty()) plugin.treeSelectionUpdate(addedItems, false, messagePane);
+            });
+        }
+
         @Override
         public void addTreeItem(CheckBoxTreeItem treeItem) {
             Platform.runLater(() -> treeItems.add(treeItem));